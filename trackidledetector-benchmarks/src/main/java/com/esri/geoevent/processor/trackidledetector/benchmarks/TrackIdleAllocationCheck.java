@@ -0,0 +1,246 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.benchmarks;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetector;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.framework.i18n.BundleLoggerFactory;
+import com.sun.management.ThreadMXBean;
+
+/**
+ * Fails when a hot path scenario allocates more bytes per event than its budget in {@value #BUDGETS}, or when a
+ * stationary report allocates at all. Runs in the verify phase with TRACE off; record new budgets with --record.
+ */
+public class TrackIdleAllocationCheck
+{
+  public static final String  BUDGETS            = "allocation-budgets.properties";
+
+  private static final int    WARMUP_ROUNDS      = 10;
+  private static final int    MEASURED_ROUNDS    = 5;
+  private static final double BUDGET_HEADROOM    = 1.25;
+  private static final long   BUDGET_SLACK_BYTES = 64;
+
+  private final PrintStream   out;
+  private final ThreadMXBean  threads;
+  private int                 tracks             = 10000;
+  private File                record;
+
+  // the events of a round, after every track reported from the same place at each earlier round
+  public enum Scenario
+  {
+    NewTrack("OnChange", false, 300, 0, false, false),
+    Stationary("OnChange", false, 300, 1, false, true),
+    Moving("OnChange", false, 300, 1, true, false),
+    IdleTransition("OnChange", false, 90, 2, false, false),
+    Continuous("Continuous", false, 90, 3, false, false),
+    KeepFields("Continuous", true, 90, 3, false, false);
+
+    private final String  notificationMode;
+    private final boolean keepFields;
+    private final long    idleLimit;
+    private final int     round;
+    private final boolean moving;
+    private final boolean allocationFree;
+
+    private Scenario(String notificationMode, boolean keepFields, long idleLimit, int round, boolean moving, boolean allocationFree)
+    {
+      this.notificationMode = notificationMode;
+      this.keepFields = keepFields;
+      this.idleLimit = idleLimit;
+      this.round = round;
+      this.moving = moving;
+      this.allocationFree = allocationFree;
+    }
+
+    Map<String, Object> getProperties()
+    {
+      Map<String, Object> properties = new HashMap<String, Object>();
+      properties.put("notificationMode", notificationMode);
+      properties.put("keepFields", keepFields);
+      properties.put("idleLimit", idleLimit);
+      properties.put("tolerance", 50);
+      return properties;
+    }
+  }
+
+  public TrackIdleAllocationCheck(PrintStream out)
+  {
+    this.out = out;
+    Object threadBean = ManagementFactory.getThreadMXBean();
+    if (!(threadBean instanceof ThreadMXBean) || !((ThreadMXBean) threadBean).isThreadAllocatedMemorySupported())
+      throw new IllegalStateException("This JVM does not measure the bytes allocated per thread");
+    threads = (ThreadMXBean) threadBean;
+    threads.setThreadAllocatedMemoryEnabled(true);
+  }
+
+  // throws rather than exits, so that a build running it in-process fails
+  public static void main(String[] args) throws Exception
+  {
+    TrackIdleAllocationCheck check = new TrackIdleAllocationCheck(System.out);
+    if (!check.parse(args))
+    {
+      usage(System.err);
+      throw new IllegalArgumentException("Invalid options");
+    }
+    check.run();
+  }
+
+  private static void usage(PrintStream err)
+  {
+    err.println("Usage: java -cp benchmarks.jar " + TrackIdleAllocationCheck.class.getName() + " [options]");
+    err.println("  --tracks <n>            events per measured round, one per track (10000)");
+    err.println("  --record <file>         write the measurements plus headroom as the new budgets instead of checking them");
+  }
+
+  public boolean parse(String[] args)
+  {
+    try
+    {
+      for (int i = 0; i < args.length; i++)
+      {
+        switch (args[i])
+        {
+          case "--tracks":
+            tracks = Integer.parseInt(args[++i]);
+            break;
+          case "--record":
+            record = new File(args[++i]);
+            break;
+          default:
+            System.err.println("Unknown option " + args[i]);
+            return false;
+        }
+      }
+    }
+    catch (RuntimeException error)
+    {
+      System.err.println("Invalid options: " + error);
+      return false;
+    }
+    return tracks > 0;
+  }
+
+  public void run() throws Exception
+  {
+    if (BundleLoggerFactory.getLogger(TrackIdleDetector.class).isTraceEnabled())
+      throw new IllegalStateException("TRACE logging is enabled for " + TrackIdleDetector.class.getName() + ", the budgets are measured with TRACE off");
+
+    Properties budgets = loadBudgets();
+    Properties recorded = new Properties();
+    List<String> exceeded = new ArrayList<String>();
+
+    out.printf("%-16s %12s %12s%n", "Scenario", "bytes/event", "budget");
+    for (Scenario scenario : Scenario.values())
+    {
+      long allocated = measure(scenario);
+      String budgetValue = budgets.getProperty(scenario.name());
+      long budget = (budgetValue != null) ? Long.parseLong(budgetValue.trim()) : -1;
+      out.printf("%-16s %,12d %12s%n", scenario.name(), allocated, (budget >= 0) ? String.format("%,d", budget) : "none");
+
+      recorded.setProperty(scenario.name(), Long.toString((long) Math.ceil(allocated * BUDGET_HEADROOM) + BUDGET_SLACK_BYTES));
+      if (scenario.allocationFree && allocated > 0)
+        exceeded.add(scenario.name() + " allocates " + allocated + " bytes per event, it must not allocate with TRACE off");
+      else if (budget >= 0 && allocated > budget)
+        exceeded.add(scenario.name() + " allocates " + allocated + " bytes per event, its budget is " + budget);
+    }
+
+    if (record != null)
+    {
+      try (OutputStream budgetFile = new FileOutputStream(record))
+      {
+        recorded.store(budgetFile, "Bytes allocated per event by TrackIdleAllocationCheck scenario, measured plus headroom");
+      }
+      out.printf("Recorded the budgets into %s%n", record);
+      return;
+    }
+    if (!exceeded.isEmpty())
+      throw new IllegalStateException("Allocation budget exceeded:\n  " + String.join("\n  ", exceeded));
+  }
+
+  // the lowest of the measured rounds
+  public long measure(Scenario scenario) throws Exception
+  {
+    long lowest = Long.MAX_VALUE;
+    for (int round = 0; round < WARMUP_ROUNDS + MEASURED_ROUNDS; round++)
+    {
+      long allocated = measureRound(scenario);
+      if (round >= WARMUP_ROUNDS)
+        lowest = Math.min(lowest, allocated);
+    }
+    return lowest;
+  }
+
+  private long measureRound(Scenario scenario) throws Exception
+  {
+    TrackIdleDetectorFixture fixture = new TrackIdleDetectorFixture(tracks, scenario.getProperties());
+    try
+    {
+      for (int round = 0; round < scenario.round; round++)
+      {
+        for (int track = 0; track < tracks; track++)
+          fixture.process(fixture.createEvent(track, round, false));
+      }
+      GeoEvent[] events = new GeoEvent[tracks];
+      for (int track = 0; track < tracks; track++)
+        events[track] = fixture.createEvent(track, scenario.round, scenario.moving);
+
+      long threadId = Thread.currentThread().getId();
+      long before = threads.getThreadAllocatedBytes(threadId);
+      for (GeoEvent geoEvent : events)
+        fixture.process(geoEvent);
+      long allocated = threads.getThreadAllocatedBytes(threadId) - before;
+      return allocated / tracks;
+    }
+    finally
+    {
+      fixture.shutdown();
+    }
+  }
+
+  private static Properties loadBudgets() throws IOException
+  {
+    Properties budgets = new Properties();
+    try (InputStream in = TrackIdleAllocationCheck.class.getResourceAsStream(BUDGETS))
+    {
+      if (in != null)
+        budgets.load(in);
+    }
+    return budgets;
+  }
+}
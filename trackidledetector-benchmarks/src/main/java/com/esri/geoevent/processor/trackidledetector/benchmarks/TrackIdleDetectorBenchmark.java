@@ -0,0 +1,150 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.benchmarks;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+/**
+ * Throughput of TrackIdleDetector.process on known tracks; {@link #createEvent(Feed)} measures building the events
+ * alone.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrackIdleDetectorBenchmark
+{
+  public static final int BATCH_SIZE = 1000;
+
+  @Param({ "1", "1000", "100000" })
+  public int tracks;
+
+  @Param({ "Stationary", "Moving" })
+  public String movement;
+
+  @Param({ "OnChange", "Continuous" })
+  public String notificationMode;
+
+  @Param({ "false", "true" })
+  public boolean keepFields;
+
+  private TrackIdleDetectorFixture fixture;
+  private boolean                  moving;
+
+  @State(Scope.Thread)
+  public static class Feed
+  {
+    long sequence;
+    int  offset;
+
+    @Setup(Level.Trial)
+    public void setup()
+    {
+      // threads start on different tracks but cycle through all of them
+      offset = ThreadLocalRandom.current().nextInt(Integer.MAX_VALUE);
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("notificationMode", notificationMode);
+    properties.put("keepFields", keepFields);
+    properties.put("idleLimit", 300);
+    properties.put("tolerance", 50);
+    fixture = new TrackIdleDetectorFixture(tracks, properties);
+    fixture.prime();
+    moving = "Moving".equals(movement);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    fixture.shutdown();
+  }
+
+  @Benchmark
+  public GeoEvent createEvent(Feed feed) throws Exception
+  {
+    return nextEvent(feed);
+  }
+
+  @Benchmark
+  public GeoEvent process(Feed feed) throws Exception
+  {
+    return fixture.process(nextEvent(feed));
+  }
+
+  @Benchmark
+  @Threads(4)
+  public GeoEvent processContended(Feed feed) throws Exception
+  {
+    return fixture.process(nextEvent(feed));
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(BATCH_SIZE)
+  public List<GeoEvent> processBatch(Feed feed) throws Exception
+  {
+    List<GeoEvent> batch = new ArrayList<GeoEvent>(BATCH_SIZE);
+    for (int i = 0; i < BATCH_SIZE; i++)
+      batch.add(nextEvent(feed));
+    return fixture.processBatch(batch);
+  }
+
+  private GeoEvent nextEvent(Feed feed) throws Exception
+  {
+    long sequence = feed.sequence++;
+    int track = (int) ((sequence + feed.offset) % tracks);
+    return fixture.createEvent(track, 1 + sequence / tracks, moving);
+  }
+}
@@ -0,0 +1,140 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.benchmarks;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetector;
+import com.esri.geoevent.processor.trackidledetector.replay.InMemoryGeoEventServer;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * A Track Idle Detector wired to an {@link InMemoryGeoEventServer} and the events of a fleet of point tracks.
+ */
+public class TrackIdleDetectorFixture
+{
+  public static final String            TRACK_GED_NAME  = "Vehicle";
+  public static final String            TRACK_GED_OWNER = "benchmark";
+  public static final long              ROUND_MILLIS    = 60000;
+
+  private static final double           ORIGIN_X        = -117.2;
+  private static final double           ORIGIN_Y        = 34.05;
+  private static final double           GRID_STEP       = 0.01;
+  private static final double           MOVE_STEP       = 0.001;
+  private static final SpatialReference WGS84           = SpatialReference.create(4326);
+
+  private final InMemoryGeoEventServer  server          = new InMemoryGeoEventServer();
+  private final TrackIdleDetector       detector;
+  private final GeoEventDefinition      trackDefinition;
+  private final String[]                trackIds;
+  private final long                    startTime;
+  private final int                     trackIdIndex;
+  private final int                     timeIndex;
+  private final int                     speedIndex;
+  private final int                     geometryIndex;
+
+  public TrackIdleDetectorFixture(int tracks, Map<String, Object> properties) throws Exception
+  {
+    List<FieldDefinition> fields = new ArrayList<FieldDefinition>();
+    fields.add(new DefaultFieldDefinition("vehicleId", FieldType.String, "TRACK_ID"));
+    fields.add(new DefaultFieldDefinition("reportTime", FieldType.Date, "TIME_START"));
+    fields.add(new DefaultFieldDefinition("speed", FieldType.Double));
+    fields.add(new DefaultFieldDefinition("status", FieldType.String));
+    fields.add(new DefaultFieldDefinition("shape", FieldType.Geometry, "GEOMETRY"));
+    trackDefinition = server.createDefinition(TRACK_GED_NAME, TRACK_GED_OWNER, fields);
+    trackIdIndex = trackDefinition.getIndexOf("vehicleId");
+    timeIndex = trackDefinition.getIndexOf("reportTime");
+    speedIndex = trackDefinition.getIndexOf("speed");
+    geometryIndex = trackDefinition.getIndexOf("shape");
+
+    trackIds = new String[tracks];
+    for (int i = 0; i < tracks; i++)
+      trackIds[i] = "vehicle-" + i;
+    startTime = System.currentTimeMillis();
+
+    detector = server.createDetector("benchmark", properties);
+  }
+
+  public InMemoryGeoEventServer getServer()
+  {
+    return server;
+  }
+
+  public TrackIdleDetector getDetector()
+  {
+    return detector;
+  }
+
+  public int getTracks()
+  {
+    return trackIds.length;
+  }
+
+  // moving tracks move about 100 meters per round
+  public GeoEvent createEvent(int track, long round, boolean moving) throws Exception
+  {
+    double x = ORIGIN_X + (track % 1000) * GRID_STEP + ((moving) ? round * MOVE_STEP : 0);
+    double y = ORIGIN_Y + (track / 1000) * GRID_STEP;
+
+    GeoEvent geoEvent = server.createGeoEvent(trackDefinition);
+    geoEvent.setField(trackIdIndex, trackIds[track]);
+    geoEvent.setField(timeIndex, new Date(startTime + round * ROUND_MILLIS));
+    geoEvent.setField(speedIndex, (moving) ? 6.0 : 0.0);
+    geoEvent.setField(geometryIndex, new MapGeometry(new Point(x, y), WGS84));
+    return geoEvent;
+  }
+
+  public void prime() throws Exception
+  {
+    for (int track = 0; track < trackIds.length; track++)
+      detector.process(createEvent(track, 0, false));
+  }
+
+  public GeoEvent process(GeoEvent geoEvent) throws Exception
+  {
+    return detector.process(geoEvent);
+  }
+
+  public List<GeoEvent> processBatch(List<GeoEvent> geoEvents)
+  {
+    return detector.processBatch(geoEvents);
+  }
+
+  public void shutdown()
+  {
+    detector.shutdown();
+  }
+}
@@ -0,0 +1,87 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Point;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDistance;
+
+/**
+ * Cost of the Tiered movement check against the exact geodesic distance.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrackIdleDistanceBenchmark
+{
+  private static final double TOLERANCE_METERS = 50 / TrackIdleDistance.FEET_PER_METER;
+
+  @Param({ "1", "15", "1000" })
+  public double separationMeters;
+
+  @Param({ "34.05", "85" })
+  public double latitude;
+
+  private Point anchor;
+  private Point position;
+
+  @Setup
+  public void setup()
+  {
+    double degrees = separationMeters / (111320 * Math.cos(Math.toRadians(latitude)));
+    anchor = new Point(-117.2, latitude);
+    position = new Point(-117.2 + degrees, latitude);
+  }
+
+  @Benchmark
+  public int tiered()
+  {
+    return TrackIdleDistance.compareToTolerance(anchor.getX(), anchor.getY(), position.getX(), position.getY(), TOLERANCE_METERS);
+  }
+
+  @Benchmark
+  public double geodesic()
+  {
+    return GeometryEngine.geodesicDistanceOnWGS84(anchor, position);
+  }
+}
@@ -0,0 +1,123 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector.benchmarks;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+/**
+ * Throughput of TrackIdleDetector.process on one thread against all processors, each thread feeding its own tracks.
+ * The per-thread score of {@link #allThreads(Feed)} stays close to {@link #oneThread(Feed)} as long as threads on
+ * disjoint tracks do not contend.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TrackIdleScalingBenchmark
+{
+  @Param({ "1000" })
+  public int tracksPerThread;
+
+  @Param({ "false", "true" })
+  public boolean detectIdleWithoutEvents;
+
+  private final AtomicInteger      threads = new AtomicInteger();
+  private TrackIdleDetectorFixture fixture;
+  private int                      processors;
+
+  @State(Scope.Thread)
+  public static class Feed
+  {
+    long sequence;
+    int  firstTrack;
+
+    @Setup(Level.Trial)
+    public void setup(TrackIdleScalingBenchmark benchmark)
+    {
+      firstTrack = (benchmark.threads.getAndIncrement() % benchmark.processors) * benchmark.tracksPerThread;
+    }
+  }
+
+  @Setup(Level.Trial)
+  public void setup() throws Exception
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 300);
+    properties.put("tolerance", 50);
+    properties.put("detectIdleWithoutEvents", detectIdleWithoutEvents);
+    processors = Runtime.getRuntime().availableProcessors();
+    threads.set(0);
+    fixture = new TrackIdleDetectorFixture(tracksPerThread * processors, properties);
+    fixture.prime();
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown()
+  {
+    fixture.shutdown();
+  }
+
+  @Benchmark
+  @Threads(1)
+  public GeoEvent oneThread(Feed feed) throws Exception
+  {
+    return fixture.process(nextEvent(feed));
+  }
+
+  @Benchmark
+  @Threads(Threads.MAX)
+  public GeoEvent allThreads(Feed feed) throws Exception
+  {
+    return fixture.process(nextEvent(feed));
+  }
+
+  private GeoEvent nextEvent(Feed feed) throws Exception
+  {
+    long sequence = feed.sequence++;
+    return fixture.createEvent(feed.firstTrack + (int) (sequence % tracksPerThread), 1 + sequence / tracksPerThread, false);
+  }
+}
@@ -0,0 +1,291 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Append-only log of the track idle states, compacted from the live states once it has grown well beyond them.
+ */
+public class TrackIdleCheckpoint
+{
+  private static final int                    MAGIC            = 0x54494435;
+  private static final String                 NULL_MARKER      = "\u0000";
+  private static final byte                   RECORD_STATE     = 1;
+  private static final byte                   RECORD_REMOVED   = 2;
+  private static final int                    BUFFER_SIZE      = 1 << 16;
+  private static final long                   COMPACTION_SLACK = 1024;
+
+  private final File                          file;
+  private final ConcurrentLinkedQueue<Object> pending          = new ConcurrentLinkedQueue<Object>();
+  private DataOutputStream                    log;
+  private FileOutputStream                    logFile;
+  private long                                logRecords;
+  private boolean                             rewriteLog;
+
+  private static final class DirtyKey
+  {
+    final TrackIdleKey key;
+
+    DirtyKey(TrackIdleKey key)
+    {
+      this.key = key;
+    }
+  }
+
+  public TrackIdleCheckpoint(File file)
+  {
+    this.file = file;
+  }
+
+  public File getFile()
+  {
+    return file;
+  }
+
+  // called while holding the track lock, a view is queued by its key
+  public void markDirty(TrackIdleState state, boolean view)
+  {
+    if (!state.checkpointDirty)
+    {
+      state.checkpointDirty = true;
+      pending.offer((view) ? new DirtyKey(state.getKey().copy()) : state);
+    }
+  }
+
+  public void markRemoved(TrackIdleKey key)
+  {
+    pending.offer(key);
+  }
+
+  // a torn record at the end of the log ends the restore
+  public Map<TrackIdleKey, TrackIdleState> restore() throws IOException
+  {
+    Map<TrackIdleKey, TrackIdleState> states = new HashMap<TrackIdleKey, TrackIdleState>();
+    Map<TrackIdleKey.Prefix, TrackIdleKey.Prefix> prefixes = new HashMap<TrackIdleKey.Prefix, TrackIdleKey.Prefix>();
+    // never append behind a torn record, the first checkpoint rewrites the log from the live states
+    rewriteLog = true;
+    logRecords = 0;
+    if (!file.exists())
+      return states;
+
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE)))
+    {
+      int magic = in.readInt();
+      if (magic != MAGIC)
+        throw new IOException(file + " is not a track idle checkpoint");
+      while (true)
+      {
+        byte type = in.readByte();
+        TrackIdleKey.Prefix prefix = new TrackIdleKey.Prefix(readNullable(in), readNullable(in));
+        TrackIdleKey.Prefix interned = prefixes.putIfAbsent(prefix, prefix);
+        TrackIdleKey key = new TrackIdleKey((interned != null) ? interned : prefix, in.readUTF());
+        if (type == RECORD_STATE)
+        {
+          TrackIdleState state = new TrackIdleState(key, in.readLong(), in.readDouble(), in.readDouble(), in.readInt());
+          state.setPreviousTime(in.readLong());
+          state.setIdling(in.readBoolean());
+          state.setIdleDuration(in.readDouble());
+          state.setIdleTier(in.readInt());
+          state.setRollup(in.readInt(), in.readDouble(), in.readDouble());
+          state.setAnchorArrivalTime(in.readLong());
+          states.put(key, state);
+        }
+        else
+        {
+          states.remove(key);
+        }
+        logRecords++;
+      }
+    }
+    catch (EOFException endOfLog)
+    {
+      ;
+    }
+    return states;
+  }
+
+  public void checkpoint(TrackIdleStateStore cache) throws IOException
+  {
+    if (rewriteLog)
+    {
+      compact(cache);
+      rewriteLog = false;
+    }
+    if (log == null)
+      openLog();
+
+    Object item;
+    while ((item = pending.poll()) != null)
+    {
+      if (item instanceof TrackIdleState)
+      {
+        TrackIdleState state = (TrackIdleState) item;
+        synchronized (cache.lockFor(state.getKey()))
+        {
+          state.checkpointDirty = false;
+          // evicted in the meantime, its removal record is queued as well
+          if (cache.get(state.getKey()) != state)
+            continue;
+          writeState(log, state);
+        }
+      }
+      else if (item instanceof DirtyKey)
+      {
+        TrackIdleKey key = ((DirtyKey) item).key;
+        synchronized (cache.lockFor(key))
+        {
+          TrackIdleState state = cache.get(key);
+          // evicted in the meantime, its removal record is queued as well
+          if (state == null)
+            continue;
+          state.checkpointDirty = false;
+          cache.update(state);
+          writeState(log, state);
+        }
+      }
+      else
+      {
+        writeRemoved(log, (TrackIdleKey) item);
+      }
+      logRecords++;
+    }
+    log.flush();
+    logFile.getChannel().force(false);
+
+    if (logRecords > 2L * cache.size() + COMPACTION_SLACK)
+      compact(cache);
+  }
+
+  public void close()
+  {
+    if (log != null)
+    {
+      try
+      {
+        log.close();
+      }
+      catch (IOException error)
+      {
+        ;
+      }
+      log = null;
+      logFile = null;
+    }
+  }
+
+  private void compact(TrackIdleStateStore cache) throws IOException
+  {
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    File compacted = new File(file.getPath() + ".compact");
+    long records = 0;
+    try (FileOutputStream out = new FileOutputStream(compacted))
+    {
+      DataOutputStream data = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+      data.writeInt(MAGIC);
+      for (TrackIdleState state : cache.values())
+      {
+        synchronized (cache.lockFor(state.getKey()))
+        {
+          writeState(data, state);
+        }
+        records++;
+      }
+      data.flush();
+      out.getChannel().force(false);
+    }
+
+    close();
+    Files.move(compacted.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    openLog();
+    logRecords = records;
+  }
+
+  private void openLog() throws IOException
+  {
+    if (file.getParentFile() != null)
+      file.getParentFile().mkdirs();
+    boolean empty = !file.exists() || file.length() == 0;
+    logFile = new FileOutputStream(file, true);
+    log = new DataOutputStream(new BufferedOutputStream(logFile, BUFFER_SIZE));
+    if (empty)
+      log.writeInt(MAGIC);
+  }
+
+  private static void writeKey(DataOutputStream out, byte type, TrackIdleKey key) throws IOException
+  {
+    out.writeByte(type);
+    writeNullable(out, key.getPrefix().getOwner());
+    writeNullable(out, key.getPrefix().getName());
+    out.writeUTF(key.getTrackId());
+  }
+
+  private static void writeNullable(DataOutputStream out, String value) throws IOException
+  {
+    out.writeUTF((value != null) ? value : NULL_MARKER);
+  }
+
+  private static String readNullable(DataInputStream in) throws IOException
+  {
+    String value = in.readUTF();
+    return (value.equals(NULL_MARKER)) ? null : value;
+  }
+
+  private static void writeState(DataOutputStream out, TrackIdleState state) throws IOException
+  {
+    writeKey(out, RECORD_STATE, state.getKey());
+    out.writeLong(state.getStartTime());
+    out.writeDouble(state.getX());
+    out.writeDouble(state.getY());
+    out.writeInt(state.getWkid());
+    out.writeLong(state.getPreviousTime());
+    out.writeBoolean(state.isIdling());
+    out.writeDouble(state.getIdleDuration());
+    out.writeInt(state.getIdleTier());
+    out.writeInt(state.getIdleCount());
+    out.writeDouble(state.getTotalIdleDuration());
+    out.writeDouble(state.getLongestIdleDuration());
+    out.writeLong(state.getAnchorArrivalTime());
+  }
+
+  private static void writeRemoved(DataOutputStream out, TrackIdleKey key) throws IOException
+  {
+    writeKey(out, RECORD_REMOVED, key);
+  }
+}
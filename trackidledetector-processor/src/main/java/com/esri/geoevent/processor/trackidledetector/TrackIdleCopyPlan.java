@@ -0,0 +1,176 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Field index mapping from an input to an output GeoEvent Definition, compiled once per pair of definitions.
+ */
+public class TrackIdleCopyPlan
+{
+  private final int   idleIndex;
+  private final int   idleDurationIndex;
+  private final int   idleStartIndex;
+  private final int   idleTierIndex;
+  private final int   trackIdIndex;
+  private final int   geometryIndex;
+  private final int[] sourceIndexes;
+  private final int[] targetIndexes;
+
+  private TrackIdleCopyPlan(int idleIndex, int idleDurationIndex, int idleStartIndex, int idleTierIndex, int trackIdIndex, int geometryIndex, int[] sourceIndexes, int[] targetIndexes)
+  {
+    this.idleIndex = idleIndex;
+    this.idleDurationIndex = idleDurationIndex;
+    this.idleStartIndex = idleStartIndex;
+    this.idleTierIndex = idleTierIndex;
+    this.trackIdIndex = trackIdIndex;
+    this.geometryIndex = geometryIndex;
+    this.sourceIndexes = sourceIndexes;
+    this.targetIndexes = targetIndexes;
+  }
+
+  // without keepFields only the TRACK_ID and GEOMETRY fields are copied
+  public static TrackIdleCopyPlan compile(GeoEventDefinition input, GeoEventDefinition output, boolean keepFields, List<String> projectedFields)
+  {
+    List<FieldDefinition> outputFields = output.getFieldDefinitions();
+    int trackIdIndex = indexOfTag(outputFields, "TRACK_ID");
+    int geometryIndex = indexOfTag(outputFields, "GEOMETRY");
+
+    List<FieldDefinition> inputFields = input.getFieldDefinitions();
+    int[] sourceIndexes = new int[inputFields.size()];
+    int[] targetIndexes = new int[inputFields.size()];
+    int count = 0;
+    for (int source = 0; source < inputFields.size(); source++)
+    {
+      FieldDefinition fd = inputFields.get(source);
+      int target = -1;
+      if (keepFields)
+      {
+        if (isProjected(fd, projectedFields))
+          target = indexOfName(outputFields, fd.getName());
+      }
+      else if (fd.getTags() != null && fd.getTags().contains("TRACK_ID"))
+      {
+        target = indexOfName(outputFields, fd.getName());
+        if (target < 0)
+          target = trackIdIndex;
+      }
+      else if (fd.getTags() != null && fd.getTags().contains("GEOMETRY"))
+      {
+        target = indexOfName(outputFields, fd.getName());
+        if (target < 0)
+          target = geometryIndex;
+      }
+
+      if (target >= 0)
+      {
+        sourceIndexes[count] = source;
+        targetIndexes[count] = target;
+        count++;
+      }
+    }
+
+    return new TrackIdleCopyPlan(indexOfName(outputFields, "idle"), indexOfName(outputFields, "idleDuration"), indexOfName(outputFields, "idleStart"), indexOfName(outputFields, "idleTier"), trackIdIndex, geometryIndex, Arrays.copyOf(sourceIndexes, count), Arrays.copyOf(targetIndexes, count));
+  }
+
+  // the TRACK_ID and GEOMETRY fields are always kept
+  public static boolean isProjected(FieldDefinition fd, List<String> projectedFields)
+  {
+    if (projectedFields.isEmpty())
+      return true;
+    List<String> tags = fd.getTags();
+    if (tags != null && (tags.contains("TRACK_ID") || tags.contains("GEOMETRY")))
+      return true;
+    for (String projected : projectedFields)
+    {
+      if (projected.equalsIgnoreCase(fd.getName()))
+        return true;
+      if (tags != null)
+      {
+        for (String tag : tags)
+        {
+          if (projected.equalsIgnoreCase(tag))
+            return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  // a definition registered before the idle tiers has no idleTier field
+  public void setIdleFields(GeoEvent target, boolean isIdle, double idleDuration, Date idleStart, int idleTier) throws Exception
+  {
+    set(target, idleIndex, isIdle);
+    set(target, idleDurationIndex, idleDuration);
+    set(target, idleStartIndex, idleStart);
+    set(target, idleTierIndex, idleTier);
+  }
+
+  public void setTrackIdAndGeometry(GeoEvent target, String trackId, Object geometry) throws Exception
+  {
+    set(target, trackIdIndex, trackId);
+    set(target, geometryIndex, geometry);
+  }
+
+  public void copyFields(GeoEvent source, GeoEvent target) throws Exception
+  {
+    for (int i = 0; i < sourceIndexes.length; i++)
+      target.setField(targetIndexes[i], source.getField(sourceIndexes[i]));
+  }
+
+  private static void set(GeoEvent target, int index, Object value) throws Exception
+  {
+    if (index >= 0)
+      target.setField(index, value);
+  }
+
+  private static int indexOfName(List<FieldDefinition> fields, String name)
+  {
+    for (int index = 0; index < fields.size(); index++)
+    {
+      if (fields.get(index).getName().equalsIgnoreCase(name))
+        return index;
+    }
+    return -1;
+  }
+
+  private static int indexOfTag(List<FieldDefinition> fields, String tag)
+  {
+    for (int index = 0; index < fields.size(); index++)
+    {
+      List<String> tags = fields.get(index).getTags();
+      if (tags != null && tags.contains(tag))
+        return index;
+    }
+    return -1;
+  }
+}
@@ -24,17 +24,40 @@
 
 package com.esri.geoevent.processor.trackidledetector;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Observable;
+import java.util.Set;
+import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+import javax.management.JMException;
+
+import com.esri.core.geometry.Envelope2D;
+import com.esri.core.geometry.Geometry;
 import com.esri.core.geometry.Geometry.Type;
 import com.esri.core.geometry.GeometryEngine;
 import com.esri.core.geometry.MapGeometry;
 import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
 import com.esri.ges.core.ConfigurationException;
 import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.core.geoevent.DefaultFieldDefinition;
@@ -48,7 +71,10 @@ import com.esri.ges.framework.i18n.BundleLogger;
 import com.esri.ges.framework.i18n.BundleLoggerFactory;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManagerException;
+import com.esri.ges.messaging.EventDestination;
+import com.esri.ges.messaging.EventUpdatable;
 import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
 import com.esri.ges.messaging.Messaging;
 import com.esri.ges.messaging.MessagingException;
 import com.esri.ges.processor.GeoEventProcessorBase;
@@ -56,28 +82,90 @@ import com.esri.ges.processor.GeoEventProcessorDefinition;
 import com.esri.ges.util.Converter;
 import com.esri.ges.util.Validator;
 
-public class TrackIdleDetector extends GeoEventProcessorBase
+public class TrackIdleDetector extends GeoEventProcessorBase implements GeoEventProducer, EventUpdatable, TrackIdleStateStore.EvictionListener, TrackIdleNotificationWorker.NotificationListener
 {
-  private static final BundleLogger         LOGGER                         = BundleLoggerFactory.getLogger(TrackIdleDetector.class);
+  private static final BundleLogger                     LOGGER                         = BundleLoggerFactory.getLogger(TrackIdleDetector.class);
+  private static final ThreadLocal<Point>               ANCHOR_POINT                   = ThreadLocal.withInitial(Point::new);
+  private static final ThreadLocal<Point>               POSITION_POINT                 = ThreadLocal.withInitial(Point::new);
+  private static final ThreadLocal<Envelope2D>          ENVELOPE                       = ThreadLocal.withInitial(Envelope2D::new);
+  private static final ThreadLocal<TrackIdleKey>        PROBE_KEY                      = ThreadLocal.withInitial(TrackIdleKey::new);
+  private static final int                              PARALLEL_BATCH_TRACKS          = 64;
+  private static final long                             LOG_LEVEL_CHECK_INTERVAL       = 1000;
+  private static final int                              PROJECTION_DIGEST_BYTES        = 16;
 
   // transport properties
-  private long                              idleLimit;
-  private long                              tolerance;
-  private String                            outGedSuffixName;
-  private Boolean                           keepFields                     = false;
-  private boolean                           accumulateIdleDuration         = true;
-  private boolean                           reportIdleDurationWhileNotIdle = true;
-  private TrackIdleNotificationMode         notificationMode;
+  private long                                          idleLimit;
+  private String                                        idleTierLimits                 = "";
+  private long                                          tolerance;
+  private double                                        toleranceMeters;
+  private TrackIdleDistanceMode                         distanceMode;
+  private TrackIdleGeometryComparison                   geometryComparison;
+  private String                                        outGedSuffixName;
+  private Boolean                                       keepFields                     = false;
+  private List<String>                                  projectedFields                = new ArrayList<String>();
+  private boolean                                       accumulateIdleDuration         = true;
+  private boolean                                       reportIdleDurationWhileNotIdle = true;
+  private TrackIdleNotificationMode                     notificationMode;
+  private long                                          notificationInterval           = 60;
+  private boolean                                       detectIdleWithoutEvents        = false;
+  private long                                          idleTimerResolution            = 1000;
+  private long                                          maxTracks                      = 0;
+  private long                                          trackTimeToLive                = 0;
+  private boolean                                       emitTrackExpired               = false;
+  private boolean                                       emitRollups                    = false;
+  private long                                          rollupInterval                 = 86400;
+  private String                                        checkpointDirectory            = "";
+  private long                                          checkpointInterval             = 30;
+  private long                                          eventTimeLateness              = 0;
+  private int                                           reorderBufferSize              = 8;
+  private String                                        traceTrackId                   = "";
+  private long                                          traceSampleRate                = 1;
+  private boolean                                       indexIdleTracks                = false;
+  private double                                        idleIndexCellSize              = 1000;
+  private boolean                                       asyncNotifications             = false;
+  private int                                           notificationQueueSize          = 8192;
+  private TrackIdleNotificationOverflow                 notificationOverflow           = TrackIdleNotificationOverflow.Block;
+  private TrackIdleStateStoreType                       stateStore                     = TrackIdleStateStoreType.OnHeap;
+  private int                                           offHeapTrackIdLength           = 64;
 
   // injections
-  private GeoEventCreator                   geoEventCreator;
-  private GeoEventDefinitionManager         gedManager;
+  private Messaging                                     messaging;
+  private GeoEventCreator                               geoEventCreator;
+  private GeoEventProducer                              geoEventProducer;
+  private GeoEventDefinitionManager                     gedManager;
+  private TrackIdleDetectorService                      service;
 
   // private data members
-  private List<FieldDefinition>             trackIdleFields;
-  private GeoEventDefinition                trackIdleGed;
+  private List<FieldDefinition>                         trackIdleFields;
+  // idle limits (seconds) of the idle tiers in increasing order, the idle limit is tier 1
+  private long[]                                        idleLimits;
+  private boolean                                       idleTierLimitsValid            = true;
+  private GeoEventDefinition                            trackIdleGed;
+  private GeoEventDefinition                            trackExpiredGed;
+  private GeoEventDefinition                            trackRollupGed;
+  private TrackIdleTimingWheel                          idleTimingWheel;
+  private ScheduledExecutorService                      idleTimer;
+  private volatile TrackIdleCheckpoint                  checkpoint;
+  private ScheduledExecutorService                      checkpointer;
+  private ScheduledExecutorService                      reorderTimer;
+  private ScheduledExecutorService                      rollupTimer;
+  private volatile TrackIdleSpatialIndex                idleIndex;
+  private volatile TrackIdleDistanceStrategy            lastDistanceStrategy;
+  private volatile TrackIdleNotificationWorker          notificationWorker;
+  private volatile boolean                              traceEnabled;
+  private volatile long                                 nextLogLevelCheck;
+  private final AtomicLong                              traceSequence                  = new AtomicLong();
+  private final AtomicBoolean                           geometryRejectionReported      = new AtomicBoolean();
 
-  private final Map<String, TrackIdleState> trackIdleStates                = new ConcurrentHashMap<String, TrackIdleState>();
+  private volatile TrackIdleStateStore                  trackIdleStates                = new TrackIdleStateCache();
+  private final Map<Integer, SpatialReference>          spatialReferences              = new ConcurrentHashMap<Integer, SpatialReference>();
+  private final Map<Integer, TrackIdleDistanceStrategy> distanceStrategies             = new ConcurrentHashMap<Integer, TrackIdleDistanceStrategy>();
+  private final Map<String, TrackIdleKey.Prefix>        keyPrefixes                    = new ConcurrentHashMap<String, TrackIdleKey.Prefix>();
+  private final Map<String, TrackIdleOutputDefinition>  outputDefinitions              = new ConcurrentHashMap<String, TrackIdleOutputDefinition>();
+  // input GEDs without a GUID, keyed by identity
+  private final Map<Object, TrackIdleOutputDefinition>  anonymousOutputDefinitions     = Collections.synchronizedMap(new IdentityHashMap<Object, TrackIdleOutputDefinition>());
+  private final TrackIdleMetrics                        metrics                        = new TrackIdleMetrics(trackIdleStates);
+  private final Set<TrackIdleState>                     reorderingStates               = ConcurrentHashMap.newKeySet();
 
   protected TrackIdleDetector(GeoEventProcessorDefinition definition) throws ComponentException
   {
@@ -89,15 +177,53 @@ public class TrackIdleDetector extends GeoEventProcessorBase
   {
     // read properties
     notificationMode = Validator.valueOfIgnoreCase(TrackIdleNotificationMode.class, getProperty("notificationMode").getValueAsString(), TrackIdleNotificationMode.OnChange);
+    notificationInterval = Converter.convertToLong(getProperty("notificationInterval").getValueAsString(), 60l);
     idleLimit = Converter.convertToInteger(getProperty("idleLimit").getValueAsString(), 300);
+    idleTierLimits = getProperty("idleTierLimits").getValueAsString();
+    long[] tierLimits = parseIdleLimits(idleLimit, idleTierLimits);
+    idleTierLimitsValid = tierLimits != null;
+    idleLimits = (tierLimits != null) ? tierLimits : new long[] { idleLimit };
     tolerance = Converter.convertToLong(getProperty("tolerance").getValueAsString(), 50l);
+    toleranceMeters = tolerance / TrackIdleDistance.FEET_PER_METER;
+    distanceMode = Validator.valueOfIgnoreCase(TrackIdleDistanceMode.class, getProperty("distanceMode").getValueAsString(), TrackIdleDistanceMode.Tiered);
+    geometryComparison = Validator.valueOfIgnoreCase(TrackIdleGeometryComparison.class, getProperty("geometryComparison").getValueAsString(), TrackIdleGeometryComparison.Center);
     keepFields = (Boolean) getProperty("keepFields").getValue();
+    projectedFields = parseProjectedFields(getProperty("projectedFields").getValueAsString());
     outGedSuffixName = getProperty("outGedSuffixName").getValueAsString();
     accumulateIdleDuration = (Boolean) getProperty("accumulateIdleDuration").getValue();
     reportIdleDurationWhileNotIdle = (Boolean) getProperty("reportIdleDurationWhileNotIdle").getValue();
+    detectIdleWithoutEvents = Converter.convertToBoolean(getProperty("detectIdleWithoutEvents").getValueAsString(), false);
+    idleTimerResolution = Converter.convertToLong(getProperty("idleTimerResolution").getValueAsString(), 1000l);
+    maxTracks = Converter.convertToLong(getProperty("maxTracks").getValueAsString(), 0l);
+    trackTimeToLive = Converter.convertToLong(getProperty("trackTimeToLive").getValueAsString(), 0l);
+    emitTrackExpired = Converter.convertToBoolean(getProperty("emitTrackExpired").getValueAsString(), false);
+    emitRollups = Converter.convertToBoolean(getProperty("emitRollups").getValueAsString(), false);
+    rollupInterval = Converter.convertToLong(getProperty("rollupInterval").getValueAsString(), 86400l);
+    checkpointDirectory = getProperty("checkpointDirectory").getValueAsString();
+    checkpointInterval = Converter.convertToLong(getProperty("checkpointInterval").getValueAsString(), 30l);
+    eventTimeLateness = Converter.convertToLong(getProperty("eventTimeLateness").getValueAsString(), 0l);
+    reorderBufferSize = Converter.convertToInteger(getProperty("reorderBufferSize").getValueAsString(), 8);
+    traceTrackId = getProperty("traceTrackId").getValueAsString();
+    if (traceTrackId == null)
+      traceTrackId = "";
+    traceTrackId = traceTrackId.trim();
+    traceSampleRate = Math.max(1, Converter.convertToLong(getProperty("traceSampleRate").getValueAsString(), 1l));
+    indexIdleTracks = Converter.convertToBoolean(getProperty("indexIdleTracks").getValueAsString(), false);
+    idleIndexCellSize = Converter.convertToDouble(getProperty("idleIndexCellSize").getValueAsString(), 1000.0);
+    asyncNotifications = Converter.convertToBoolean(getProperty("asyncNotifications").getValueAsString(), false);
+    notificationQueueSize = Converter.convertToInteger(getProperty("notificationQueueSize").getValueAsString(), 8192);
+    notificationOverflow = Validator.valueOfIgnoreCase(TrackIdleNotificationOverflow.class, getProperty("notificationOverflow").getValueAsString(), TrackIdleNotificationOverflow.Block);
+    stateStore = Validator.valueOfIgnoreCase(TrackIdleStateStoreType.class, getProperty("stateStore").getValueAsString(), TrackIdleStateStoreType.OnHeap);
+    offHeapTrackIdLength = Converter.convertToInteger(getProperty("offHeapTrackIdLength").getValueAsString(), 64);
+    nextLogLevelCheck = 0;
+    keyPrefixes.clear();
+    outputDefinitions.clear();
+    anonymousOutputDefinitions.clear();
 
     // get the "TrackIdle" GED
     trackIdleGed = gedManager.searchGeoEventDefinition(TrackIdleDetectorDefinition.DEFAULT_TRACK_IDLE_GED_NAME, definition.getUri().toString());
+    trackExpiredGed = gedManager.searchGeoEventDefinition(TrackIdleDetectorDefinition.DEFAULT_TRACK_EXPIRED_GED_NAME, definition.getUri().toString());
+    trackRollupGed = gedManager.searchGeoEventDefinition(TrackIdleDetectorDefinition.DEFAULT_TRACK_ROLLUP_GED_NAME, definition.getUri().toString());
 
     // prepare to augment track idle fields to a GED
     trackIdleFields = new ArrayList<FieldDefinition>();
@@ -106,6 +232,7 @@ public class TrackIdleDetector extends GeoEventProcessorBase
       trackIdleFields.add(new DefaultFieldDefinition("idle", FieldType.Boolean));
       trackIdleFields.add(new DefaultFieldDefinition("idleDuration", FieldType.Double));
       trackIdleFields.add(new DefaultFieldDefinition("idleStart", FieldType.Date));
+      trackIdleFields.add(new DefaultFieldDefinition("idleTier", FieldType.Integer));
     }
     catch (ConfigurationException error)
     {
@@ -114,6 +241,15 @@ public class TrackIdleDetector extends GeoEventProcessorBase
       else
         LOGGER.warn("FAILED_ADD_FIELD_GED", error.getMessage());
     }
+
+    startNotificationWorker();
+    startReorderTimer();
+    startStateStore();
+    trackIdleStates.configure(maxTracks, trackTimeToLive * 1000);
+    startIdleIndex();
+    startCheckpoint();
+    startIdleTimer();
+    startRollupTimer();
   }
 
   @Override
@@ -129,6 +265,33 @@ public class TrackIdleDetector extends GeoEventProcessorBase
     List<String> errors = new ArrayList<String>();
     if (idleLimit <= 0)
       errors.add(LOGGER.translate("VALIDATION_IDLE_LIMIT_INVALID", definition.getName()));
+    if (notificationMode == TrackIdleNotificationMode.Interval && notificationInterval <= 0)
+      errors.add(LOGGER.translate("VALIDATION_NOTIFICATION_INTERVAL_INVALID", definition.getName()));
+    if (!idleTierLimitsValid)
+      errors.add(LOGGER.translate("VALIDATION_IDLE_TIER_LIMITS_INVALID", definition.getName(), idleTierLimits));
+
+    if (maxTracks < 0)
+      errors.add(LOGGER.translate("VALIDATION_MAX_TRACKS_INVALID", definition.getName()));
+    if (trackTimeToLive < 0)
+      errors.add(LOGGER.translate("VALIDATION_TRACK_TIME_TO_LIVE_INVALID", definition.getName()));
+    if (detectIdleWithoutEvents && idleTimerResolution <= 0)
+      errors.add(LOGGER.translate("VALIDATION_IDLE_TIMER_RESOLUTION_INVALID", definition.getName()));
+    if (emitRollups && rollupInterval <= 0)
+      errors.add(LOGGER.translate("VALIDATION_ROLLUP_INTERVAL_INVALID", definition.getName()));
+    if (checkpointDirectory != null && checkpointDirectory.trim().length() > 0 && checkpointInterval <= 0)
+      errors.add(LOGGER.translate("VALIDATION_CHECKPOINT_INTERVAL_INVALID", definition.getName()));
+    if (eventTimeLateness < 0)
+      errors.add(LOGGER.translate("VALIDATION_EVENT_TIME_LATENESS_INVALID", definition.getName()));
+    if (eventTimeLateness > 0 && reorderBufferSize <= 0)
+      errors.add(LOGGER.translate("VALIDATION_REORDER_BUFFER_SIZE_INVALID", definition.getName()));
+    if (indexIdleTracks && idleIndexCellSize <= 0)
+      errors.add(LOGGER.translate("VALIDATION_IDLE_INDEX_CELL_SIZE_INVALID", definition.getName()));
+    if (asyncNotifications && notificationQueueSize <= 0)
+      errors.add(LOGGER.translate("VALIDATION_NOTIFICATION_QUEUE_SIZE_INVALID", definition.getName()));
+    if (stateStore == TrackIdleStateStoreType.OffHeap && offHeapTrackIdLength <= 0)
+      errors.add(LOGGER.translate("VALIDATION_OFF_HEAP_TRACK_ID_LENGTH_INVALID", definition.getName()));
+    if (stateStore == TrackIdleStateStoreType.OffHeap && !isOffHeapCompatible())
+      errors.add(LOGGER.translate("VALIDATION_OFF_HEAP_STORE_UNSUPPORTED", definition.getName()));
 
     if (errors.size() > 0)
     {
@@ -140,6 +303,131 @@ public class TrackIdleDetector extends GeoEventProcessorBase
   }
 
   private GeoEvent processGeoEvent(GeoEvent geoEvent) throws GeoEventDefinitionManagerException
+  {
+    long startNanos = System.nanoTime();
+    if (!isProcessable(geoEvent))
+      return null;
+    long now = System.currentTimeMillis();
+    boolean trace = isTraced(geoEvent.getTrackId(), now);
+    if (trace)
+      LOGGER.trace("PROCESSING_EVENT", geoEvent);
+
+    GeoEvent idleGeoEvent = null;
+    try
+    {
+      TrackIdleKey cacheKey = buildCacheKey(geoEvent);
+      if (trace)
+        LOGGER.trace("PROCESSING_EVENT_CACHE_KEY", cacheKey);
+
+      // transitions of one track are serialized, different tracks proceed in parallel
+      synchronized (trackIdleStates.lockFor(cacheKey))
+      {
+        TrackIdleState idleSate = trackIdleStates.get(cacheKey);
+        if (trace)
+          LOGGER.trace("FOUND_EVENT_IDLE_STATE", idleSate);
+        idleGeoEvent = handleTrackEvent(cacheKey, idleSate, geoEvent, now, null, trace);
+      }
+      trackIdleStates.evict(now, this);
+      metrics.eventProcessed(System.nanoTime() - startNanos);
+    }
+    catch (Exception error)
+    {
+      processFailed(geoEvent, error);
+    }
+
+    return idleGeoEvent;
+  }
+
+  /**
+   * Processes the GeoEvents like process() one at a time in list order and returns their notifications in that order.
+   * Tracks are evicted once after the batch, so the evicted tracks may differ from sequential processing.
+   */
+  public List<GeoEvent> processBatch(List<GeoEvent> geoEvents)
+  {
+    final GeoEvent[] events = geoEvents.toArray(new GeoEvent[geoEvents.size()]);
+    final GeoEvent[] notifications = new GeoEvent[events.length];
+    // notifications released ahead of the one of their event in event-time mode
+    final GeoEvent[][] earlier = (eventTimeLateness > 0) ? new GeoEvent[events.length][] : null;
+    Map<TrackIdleKey, TrackEvents> tracks = new HashMap<TrackIdleKey, TrackEvents>();
+    List<TrackEvents> batch = new ArrayList<TrackEvents>();
+    for (int i = 0; i < events.length; i++)
+    {
+      if (!isProcessable(events[i]))
+        continue;
+      try
+      {
+        TrackIdleKey cacheKey = buildCacheKey(events[i]);
+        TrackEvents trackEvents = tracks.get(cacheKey);
+        if (trackEvents == null)
+        {
+          trackEvents = new TrackEvents(cacheKey.copy());
+          tracks.put(trackEvents.cacheKey, trackEvents);
+          batch.add(trackEvents);
+        }
+        trackEvents.add(i);
+      }
+      catch (Exception error)
+      {
+        processFailed(events[i], error);
+      }
+    }
+
+    if (batch.size() >= PARALLEL_BATCH_TRACKS)
+      batch.parallelStream().forEach(trackEvents -> processTrackEvents(trackEvents, events, notifications, earlier));
+    else
+      for (TrackEvents trackEvents : batch)
+        processTrackEvents(trackEvents, events, notifications, earlier);
+    trackIdleStates.evict(System.currentTimeMillis(), this);
+
+    List<GeoEvent> idleGeoEvents = new ArrayList<GeoEvent>();
+    for (int i = 0; i < notifications.length; i++)
+    {
+      if (earlier != null && earlier[i] != null)
+        idleGeoEvents.addAll(Arrays.asList(earlier[i]));
+      if (notifications[i] != null)
+        idleGeoEvents.add(notifications[i]);
+    }
+    return idleGeoEvents;
+  }
+
+  private void processTrackEvents(TrackEvents trackEvents, GeoEvent[] events, GeoEvent[] notifications, GeoEvent[][] earlier)
+  {
+    long now = System.currentTimeMillis();
+    List<GeoEvent> released = (earlier != null) ? new ArrayList<GeoEvent>() : null;
+    synchronized (trackIdleStates.lockFor(trackEvents.cacheKey))
+    {
+      TrackIdleState idleSate = trackIdleStates.get(trackEvents.cacheKey);
+      for (int n = 0; n < trackEvents.size; n++)
+      {
+        int index = trackEvents.indexes[n];
+        long startNanos = System.nanoTime();
+        boolean trace = isTraced(trackEvents.cacheKey.getTrackId(), now);
+        if (trace)
+        {
+          LOGGER.trace("PROCESSING_EVENT", events[index]);
+          LOGGER.trace("FOUND_EVENT_IDLE_STATE", idleSate);
+        }
+        try
+        {
+          notifications[index] = handleTrackEvent(trackEvents.cacheKey, idleSate, events[index], now, released, trace);
+          if (idleSate == null)
+            idleSate = trackIdleStates.get(trackEvents.cacheKey);
+          metrics.eventProcessed(System.nanoTime() - startNanos);
+        }
+        catch (Exception error)
+        {
+          processFailed(events[index], error);
+        }
+        if (released != null && !released.isEmpty())
+        {
+          earlier[index] = released.toArray(new GeoEvent[released.size()]);
+          released.clear();
+        }
+      }
+    }
+  }
+
+  private boolean isProcessable(GeoEvent geoEvent)
   {
     if (geoEvent.getTrackId() == null || geoEvent.getGeometry() == null || geoEvent.getField("TIME_START") == null)
     {
@@ -148,114 +436,489 @@ public class TrackIdleDetector extends GeoEventProcessorBase
         LOGGER.warn("NULL_ERROR", new RuntimeException("Required field missing"), gedName, geoEvent);
       else
         LOGGER.warn("NULL_ERROR", gedName, "");
-      return null;
+      metrics.eventDropped();
+      return false;
+    }
+    if (!isSupported(geoEvent.getGeometry().getGeometry()))
+    {
+      // a counted rejection rather than an exception per event, only the first one is logged
+      if (geometryRejectionReported.compareAndSet(false, true))
+        LOGGER.warn("INVALID_GEOMETRY_TYPE", geoEvent.getGeoEventDefinition().getName());
+      if (traceEnabled)
+        LOGGER.trace("GEOMETRY_REJECTED", geoEvent.getTrackId(), geoEvent.getGeometry());
+      metrics.eventRejected();
+      return false;
     }
     if (trackIdleStates == null)
     {
       LOGGER.warn("TRACK_IDLES_NULL");
-      return null;
+      metrics.eventDropped();
+      return false;
     }
-    LOGGER.trace("PROCESSING_EVENT", geoEvent);
+    return true;
+  }
 
-    GeoEvent idleGeoEvent = null;
-    try
+  private static boolean isSupported(Geometry geometry)
+  {
+    if (geometry == null || geometry.isEmpty())
+      return false;
+    switch (geometry.getType())
+    {
+      case Point:
+      case MultiPoint:
+      case Polyline:
+      case Polygon:
+      case Envelope:
+        return true;
+      default:
+        return false;
+    }
+  }
+
+  // an empty list keeps every field
+  private static List<String> parseProjectedFields(String fieldList)
+  {
+    List<String> fields = new ArrayList<String>();
+    if (fieldList != null)
     {
-      String cacheKey = buildCacheKey(geoEvent);
-      LOGGER.trace("PROCESSING_EVENT_CACHE_KEY", cacheKey);
-      TrackIdleState idleSate = trackIdleStates.get(cacheKey);
-      LOGGER.trace("FOUND_EVENT_IDLE_STATE", idleSate);
-      Date geoEventTime = geoEvent.getStartTime();
-      LOGGER.trace("CURRENT_EVENT_TIME", geoEventTime);
+      for (String field : fieldList.split(","))
+      {
+        if (field.trim().length() > 0)
+          fields.add(field.trim());
+      }
+    }
+    return fields;
+  }
 
-      if (idleSate != null && idleSate.getGeometry() != null)
+  // returns null unless the tier limits increase above the idle limit
+  private static long[] parseIdleLimits(long idleLimit, String tierLimits)
+  {
+    List<Long> limits = new ArrayList<Long>();
+    limits.add(idleLimit);
+    if (tierLimits != null && tierLimits.trim().length() > 0)
+    {
+      for (String tierLimit : tierLimits.split(","))
       {
+        Long limit = Converter.convertToLong(tierLimit.trim(), null);
+        if (limit == null || limit <= limits.get(limits.size() - 1))
+          return null;
+        limits.add(limit);
+      }
+    }
+    long[] idleLimits = new long[limits.size()];
+    for (int i = 0; i < idleLimits.length; i++)
+      idleLimits[i] = limits.get(i);
+    return idleLimits;
+  }
 
-        if (!hasGeometryMoved(cacheKey, geoEvent.getGeometry(), idleSate.getGeometry(), tolerance))
-        {
-          LOGGER.trace("TRACK_NOT_MOVED_ENOUGH", cacheKey, tolerance, geoEvent);
-          // didn't move more than tolerance (in feet)
+  // number of idle limits reached by an idle duration (seconds)
+  private int idleTierOf(double idleDuration)
+  {
+    int tier = 0;
+    while (tier < idleLimits.length && idleDuration >= idleLimits[tier])
+      tier++;
+    return tier;
+  }
 
-          double idleDuration = 0;
-          if (accumulateIdleDuration)
-          {
-            idleDuration = geoEventTime.getTime() - idleSate.getStartTime().getTime();
-          }
-          else
-          {
-            idleDuration = geoEventTime.getTime() - idleSate.getPreviousTime().getTime();
-          }
-          idleDuration = idleDuration / 1000.0;
-          idleDuration = Math.abs(idleDuration);
-          idleDuration = Math.round(idleDuration * 10.0) / 10.0;
+  // the logger level is only checked once a second
+  private boolean isTraced(String trackId, long now)
+  {
+    if (now >= nextLogLevelCheck)
+    {
+      traceEnabled = LOGGER.isTraceEnabled();
+      nextLogLevelCheck = now + LOG_LEVEL_CHECK_INTERVAL;
+    }
+    if (!traceEnabled)
+      return false;
+    if (traceTrackId.length() > 0 && !traceTrackId.equals(trackId))
+      return false;
+    return traceSampleRate == 1 || traceSequence.getAndIncrement() % traceSampleRate == 0;
+  }
 
-          if (idleDuration >= idleLimit)
-          {
-            // track is idle more than idleLimit
-            LOGGER.trace("IDLE_DURATION_EXCEEDS_LIMIT", idleDuration, idleLimit, geoEvent);
+  private void processFailed(GeoEvent geoEvent, Exception error)
+  {
+    metrics.eventFailed();
+    if (LOGGER.isTraceEnabled())
+      LOGGER.warn("PROCESS_EVENT_FAILURE", error, geoEvent);
+    else
+      LOGGER.warn("PROCESS_EVENT_FAILURE", error.getMessage());
+  }
 
-            // set track idle duration
-            idleSate.setIdleDuration(idleDuration);
+  // called while holding the track lock
+  private GeoEvent handleTrackEvent(TrackIdleKey cacheKey, TrackIdleState idleSate, GeoEvent geoEvent, long now, List<GeoEvent> earlier, boolean trace) throws MessagingException
+  {
+    if (eventTimeLateness > 0)
+      return reorderTrackEvent(cacheKey, idleSate, geoEvent, now, earlier, trace);
 
-            if (notificationMode == TrackIdleNotificationMode.Continuous)
-            {
-              GeoEventDefinition ged = createTrackIdleGED(geoEvent);
+    if (idleSate == null)
+    {
+      createTrackIdleState(cacheKey, geoEvent, now);
+      return null;
+    }
+    if (!idleSate.hasPosition())
+    {
+      // left without an anchor by the event-time mode
+      idleSate.setLastUpdated(now);
+      anchorTrackIdleState(idleSate, geoEvent, now);
+      trackIdleStates.update(idleSate);
+      return null;
+    }
+    GeoEvent idleGeoEvent = updateTrackIdleState(cacheKey, idleSate, geoEvent, now, trace);
+    trackIdleStates.update(idleSate);
+    return idleGeoEvent;
+  }
 
-              idleGeoEvent = createTrackIdleGeoEvent(ged, idleSate, true, true, geoEvent);
-            }
-            else if (!idleSate.isIdling())
-            {
-              GeoEventDefinition ged = createTrackIdleGED(geoEvent);
-              idleGeoEvent = createTrackIdleGeoEvent(ged, idleSate, true, true, geoEvent);
-            }
-            // set track to idle
-            idleSate.setIdling(true);
-          }
+  // called while holding the track lock
+  private TrackIdleState createTrackIdleState(TrackIdleKey cacheKey, GeoEvent geoEvent, long now)
+  {
+    long geoEventTime = geoEvent.getStartTime().getTime();
+    TrackIdleState newState = new TrackIdleState(cacheKey.copy(), geoEventTime, Double.NaN, Double.NaN, 0);
+    newState.setLastUpdated(now);
+    anchorTrackIdleState(newState, geoEvent, now);
+    // stored once anchored, the off-heap store copies the state
+    trackIdleStates.put(newState.getKey(), newState);
+    return newState;
+  }
+
+  // called while holding the track lock
+  private void anchorTrackIdleState(TrackIdleState idleSate, GeoEvent geoEvent, long now)
+  {
+    long geoEventTime = geoEvent.getStartTime().getTime();
+    idleSate.setStartTime(geoEventTime);
+    idleSate.setPreviousTime(geoEventTime);
+    idleSate.setAnchorArrivalTime(now);
+    setAnchorPosition(idleSate, geoEvent.getGeometry());
+    idleSate.setGeoEventDefinition(geoEvent.getGeoEventDefinition());
+    scheduleIdleTimer(idleSate);
+    markDirty(idleSate);
+  }
+
+  // event-time mode, called while holding the track lock: applies the buffered events behind the watermark in event
+  // time order; all but the last released notification are sent, or added to earlier when given
+  private GeoEvent reorderTrackEvent(TrackIdleKey cacheKey, TrackIdleState idleSate, GeoEvent geoEvent, long now, List<GeoEvent> earlier, boolean trace) throws MessagingException
+  {
+    long geoEventTime = geoEvent.getStartTime().getTime();
+    if (idleSate == null)
+    {
+      // the track is anchored once its first event is released
+      idleSate = new TrackIdleState(cacheKey.copy(), geoEventTime, Double.NaN, Double.NaN, 0);
+      trackIdleStates.put(idleSate.getKey(), idleSate);
+    }
+    idleSate.setLastUpdated(now);
+
+    TrackIdleReorderBuffer buffer = idleSate.reorderBuffer;
+    if (buffer == null)
+      buffer = idleSate.reorderBuffer = new TrackIdleReorderBuffer(reorderBufferSize);
+    else if (buffer.getCapacity() != reorderBufferSize)
+      buffer.setCapacity(reorderBufferSize);
+    if (buffer.isLate(geoEventTime))
+    {
+      if (trace)
+        LOGGER.trace("EVENT_TOO_LATE", cacheKey, geoEvent);
+      metrics.eventLate();
+      return null;
+    }
+
+    buffer.add(geoEvent, geoEventTime, now);
+    if (buffer.size() == 1)
+      reorderingStates.add(idleSate);
+    return releaseTrackEvents(idleSate, buffer.getMaxEventTime() - eventTimeLateness * 1000, now, earlier, trace);
+  }
+
+  // called while holding the track lock
+  private GeoEvent releaseTrackEvents(TrackIdleState idleSate, long watermark, long now, List<GeoEvent> earlier, boolean trace) throws MessagingException
+  {
+    TrackIdleReorderBuffer buffer = idleSate.reorderBuffer;
+    GeoEvent idleGeoEvent = null;
+    while (buffer.isReleasable(watermark, now - eventTimeLateness * 1000))
+    {
+      GeoEvent geoEvent = buffer.poll();
+      GeoEvent released = null;
+      if (idleSate.hasPosition())
+      {
+        released = updateTrackIdleState(idleSate.getKey(), idleSate, geoEvent, now, trace);
+      }
+      else
+      {
+        anchorTrackIdleState(idleSate, geoEvent, now);
+      }
+      if (released != null)
+      {
+        if (earlier == null)
+          send(idleGeoEvent);
+        else if (idleGeoEvent != null)
+          earlier.add(idleGeoEvent);
+        idleGeoEvent = released;
+      }
+    }
+    if (buffer.size() == 0)
+      reorderingStates.remove(idleSate);
+    return idleGeoEvent;
+  }
+
+  private void startReorderTimer()
+  {
+    stopReorderTimer();
+    // buffers sized for the previous configuration are flushed, in event-time mode new ones are created on demand
+    flushReorderBuffers();
+    if (eventTimeLateness <= 0)
+      return;
+
+    long period = Math.max(100, eventTimeLateness * 1000 / 4);
+    reorderTimer = newDaemonScheduler("TrackIdleDetector-Reorder-" + getId());
+    reorderTimer.scheduleWithFixedDelay(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          onReorderTimer();
         }
-        else
+      }, period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void stopReorderTimer()
+  {
+    if (reorderTimer != null)
+    {
+      reorderTimer.shutdownNow();
+      reorderTimer = null;
+    }
+  }
+
+  // an event is held back for at most the lateness after its arrival
+  private void onReorderTimer()
+  {
+    releaseReorderBuffers(Long.MIN_VALUE);
+  }
+
+  private void flushReorderBuffers()
+  {
+    releaseReorderBuffers(Long.MAX_VALUE);
+  }
+
+  private void releaseReorderBuffers(long watermark)
+  {
+    long now = System.currentTimeMillis();
+    for (TrackIdleState idleState : reorderingStates)
+    {
+      try
+      {
+        GeoEvent idleGeoEvent = null;
+        synchronized (trackIdleStates.lockFor(idleState.getKey()))
         {
-          // moved more than tolerance, track is not idle
-          if (idleSate.isIdling())
+          if (idleState.reorderBuffer == null || trackIdleStates.get(idleState.getKey()) != idleState)
           {
-            // track is no longer idle
-            GeoEventDefinition ged = createTrackIdleGED(geoEvent);
-            idleGeoEvent = createTrackIdleGeoEvent(ged, idleSate, false, reportIdleDurationWhileNotIdle, geoEvent);
+            reorderingStates.remove(idleState);
+            continue;
           }
+          idleGeoEvent = releaseTrackEvents(idleState, watermark, now, null, isTraced(idleState.getTrackId(), now));
+          // the track went quiet or is flushed: free the slots, the buffer keeps the time of the last released event
+          if (idleState.reorderBuffer.size() == 0)
+            idleState.reorderBuffer.trim();
+        }
+        send(idleGeoEvent);
+      }
+      catch (Exception error)
+      {
+        if (LOGGER.isDebugEnabled())
+          LOGGER.warn("REORDER_FAILURE", error, idleState.getTrackId());
+        else
+          LOGGER.warn("REORDER_FAILURE", idleState.getTrackId());
+      }
+    }
+  }
+
+  // called while holding the track lock
+  private GeoEvent updateTrackIdleState(TrackIdleKey cacheKey, TrackIdleState idleSate, GeoEvent geoEvent, long now, boolean trace) throws MessagingException
+  {
+    GeoEvent idleGeoEvent = null;
+    long geoEventTime = geoEvent.getStartTime().getTime();
+    if (trace)
+      LOGGER.trace("CURRENT_EVENT_TIME", geoEvent.getStartTime());
+    idleSate.setLastUpdated(now);
 
-          idleSate.setGeometry(geoEvent.getGeometry());
-          idleSate.setStartTime(geoEventTime);
+    long movementStartNanos = System.nanoTime();
+    boolean moved = hasGeometryMoved(cacheKey, geoEvent.getGeometry(), idleSate, tolerance, trace);
+    metrics.movementChecked(System.nanoTime() - movementStartNanos);
+    if (!moved)
+    {
+      if (trace)
+        LOGGER.trace("TRACK_NOT_MOVED_ENOUGH", cacheKey, tolerance, geoEvent);
+      // didn't move more than tolerance (in feet)
 
-          // set track to not idle
-          idleSate.setIdling(false);
-        }
+      double idleDuration = 0;
+      if (accumulateIdleDuration)
+      {
+        idleDuration = geoEventTime - idleSate.getStartTime();
       }
       else
       {
-        trackIdleStates.put(cacheKey, new TrackIdleState(geoEvent.getTrackId(), geoEventTime, geoEventTime, geoEvent.getGeometry()));
+        idleDuration = geoEventTime - idleSate.getPreviousTime();
+      }
+      idleDuration = idleDuration / 1000.0;
+      idleDuration = Math.abs(idleDuration);
+      idleDuration = Math.round(idleDuration * 10.0) / 10.0;
+
+      if (idleDuration >= idleLimit)
+      {
+        // track is idle more than idleLimit
+        if (trace)
+          LOGGER.trace("IDLE_DURATION_EXCEEDS_LIMIT", idleDuration, idleLimit, geoEvent);
+
+        // set track idle duration
+        idleSate.setIdleDuration(idleDuration);
+
+        // tiers only go up while the track stays idle, crossing the next one is reported like becoming idle
+        int idleTier = idleTierOf(idleDuration);
+        boolean escalated = idleTier > idleSate.getIdleTier();
+        if (escalated)
+          idleSate.setIdleTier(idleTier);
+
+        // every mode reports becoming idle and crossing the next tier; Continuous reports every event, Interval at most
+        // once per interval since the last notification, which is when the previous time was last set
+        boolean notify = !idleSate.isIdling() || escalated;
+        if (notificationMode == TrackIdleNotificationMode.Continuous)
+          notify = true;
+        else if (notificationMode == TrackIdleNotificationMode.Interval && geoEventTime - idleSate.getPreviousTime() >= notificationInterval * 1000)
+          notify = true;
+
+        if (notify)
+          idleGeoEvent = notifyTrackIdle(idleSate, true, true, geoEvent, geoEventTime, trace);
+        // set track to idle, the idle timer now waits for the next tier if there is one
+        idleSate.setIdling(true);
+        scheduleNextIdleTier(idleSate);
+        updateIdleIndex(idleSate);
+        markDirty(idleSate);
       }
     }
-    catch (Exception error)
+    else
     {
-      if (LOGGER.isTraceEnabled())
-        LOGGER.warn("PROCESS_EVENT_FAILURE", error, geoEvent);
-      else
-        LOGGER.warn("PROCESS_EVENT_FAILURE", error.getMessage());
+      // moved more than tolerance, track is not idle
+      if (idleSate.isIdling())
+      {
+        // track is no longer idle
+        idleGeoEvent = notifyTrackIdle(idleSate, false, reportIdleDurationWhileNotIdle, geoEvent, geoEventTime, trace);
+        // the idle episode ends, it lasted from the anchor to this event
+        idleSate.closeIdleEpisode(Math.round(Math.abs(geoEventTime - idleSate.getStartTime()) / 100.0) / 10.0);
+      }
+
+      setAnchorPosition(idleSate, geoEvent.getGeometry());
+      idleSate.setStartTime(geoEventTime);
+      idleSate.setAnchorArrivalTime(now);
+      idleSate.setGeoEventDefinition(geoEvent.getGeoEventDefinition());
+
+      // set track to not idle
+      idleSate.setIdling(false);
+      idleSate.setIdleTier(0);
+      scheduleIdleTimer(idleSate);
+      updateIdleIndex(idleSate);
+      markDirty(idleSate);
     }
 
     return idleGeoEvent;
   }
 
-  private GeoEventDefinition createTrackIdleGED(GeoEvent event)
+  private TrackIdleOutputDefinition getTrackIdleOutput(GeoEventDefinition eventGED)
+  {
+    String guid = eventGED.getGuid();
+    TrackIdleOutputDefinition output = (guid != null) ? outputDefinitions.get(guid) : anonymousOutputDefinitions.get(eventGED);
+    if (output == null || !output.isValidFor(eventGED) || !isRegistered(output.getOutputDefinition()))
+    {
+      // new or changed input GED, or its output GED was removed from the GED Manager: resolve it again
+      try
+      {
+        GeoEventDefinition ged = createTrackIdleGED(eventGED);
+        output = new TrackIdleOutputDefinition(eventGED, ged, TrackIdleCopyPlan.compile(eventGED, ged, keepFields, projectedFields), null);
+      }
+      catch (RuntimeException error)
+      {
+        // logged once until the input GED or the properties change, the notifications meanwhile are counted as
+        // unresolved
+        output = new TrackIdleOutputDefinition(eventGED, null, null, error.getMessage());
+        if (LOGGER.isDebugEnabled())
+          LOGGER.warn("OUTPUT_GED_FAILURE", error, eventGED.getName(), error.getMessage());
+        else
+          LOGGER.warn("OUTPUT_GED_FAILURE", eventGED.getName(), error.getMessage());
+      }
+      if (guid != null)
+        outputDefinitions.put(guid, output);
+      else
+        anonymousOutputDefinitions.put(eventGED, output);
+    }
+    return output;
+  }
+
+  // a lookup by GUID, the GED Manager is only searched again once the output GED is gone
+  private boolean isRegistered(GeoEventDefinition ged)
+  {
+    return ged == null || ged.getGuid() == null || gedManager.getGeoEventDefinition(ged.getGuid()) != null;
+  }
+
+  private void invalidateTrackIdleGED(GeoEventDefinition eventGED)
+  {
+    if (eventGED == null)
+      return;
+    if (eventGED.getGuid() != null)
+      outputDefinitions.remove(eventGED.getGuid());
+    else
+      anonymousOutputDefinitions.remove(eventGED);
+  }
+
+  // a GED registered for another field set is never reused, empty when every field is kept
+  private static String projectionSuffix(List<String> projectedFields)
+  {
+    if (projectedFields.isEmpty())
+      return "";
+    TreeSet<String> fields = new TreeSet<String>();
+    for (String field : projectedFields)
+      fields.add(field.toLowerCase(Locale.ROOT));
+    byte[] digest;
+    try
+    {
+      digest = MessageDigest.getInstance("SHA-256").digest(String.join(",", fields).getBytes(StandardCharsets.UTF_8));
+    }
+    catch (NoSuchAlgorithmException error)
+    {
+      // every Java platform implements SHA-256
+      throw new IllegalStateException(error);
+    }
+    StringBuilder suffix = new StringBuilder("_");
+    for (int i = 0; i < PROJECTION_DIGEST_BYTES; i++)
+      suffix.append(Character.forDigit((digest[i] >> 4) & 0xF, 16)).append(Character.forDigit(digest[i] & 0xF, 16));
+    return suffix.toString();
+  }
+
+  // a GED found under the name of a projection holds the track idle fields and exactly the projected input fields
+  private boolean isProjectionOf(GeoEventDefinition ged, GeoEventDefinition eventGED)
+  {
+    TreeSet<String> expected = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    for (FieldDefinition fd : trackIdleFields)
+      expected.add(fd.getName());
+    for (FieldDefinition fd : eventGED.getFieldDefinitions())
+    {
+      if (TrackIdleCopyPlan.isProjected(fd, projectedFields))
+        expected.add(fd.getName());
+    }
+    TreeSet<String> actual = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    for (FieldDefinition fd : ged.getFieldDefinitions())
+      actual.add(fd.getName());
+    return expected.equals(actual);
+  }
+
+  private GeoEventDefinition createTrackIdleGED(GeoEventDefinition eventGED)
   {
     GeoEventDefinition ged = null;
     if (keepFields)
     {
-      String gedName = event.getGeoEventDefinition().getName() + "_" + outGedSuffixName; // TrackIdleDetectorDefinition.DEFAULT_TRACK_IDLE_GED_NAME;
+      String gedName = eventGED.getName() + "_" + outGedSuffixName + projectionSuffix(projectedFields); // TrackIdleDetectorDefinition.DEFAULT_TRACK_IDLE_GED_NAME;
       ged = gedManager.searchGeoEventDefinition(gedName, definition.getUri().toString());
+      if (ged != null && !projectedFields.isEmpty() && !isProjectionOf(ged, eventGED))
+      {
+        throw new RuntimeException(LOGGER.translate("PROJECTION_MISMATCH", gedName, eventGED.getName(), String.join(",", projectedFields)));
+      }
       if (ged == null)
       {
         // create the GED
-        GeoEventDefinition eventGED = event.getGeoEventDefinition();
-
         List<String> duplicateFieldList = new ArrayList<String>();
         for (FieldDefinition eventField : eventGED.getFieldDefinitions())
         {
@@ -287,6 +950,18 @@ public class TrackIdleDetector extends GeoEventProcessorBase
             LOGGER.warn("ADD_TRACK_IDLE_FIELDS_FAILURE", gedName);
         }
 
+        // project the input fields, the track idle fields are always kept
+        if (ged != null && !projectedFields.isEmpty())
+        {
+          List<FieldDefinition> fds = new ArrayList<FieldDefinition>();
+          for (FieldDefinition fd : ged.getFieldDefinitions())
+          {
+            if (eventGED.getFieldDefinition(fd.getName()) == null || TrackIdleCopyPlan.isProjected(fd, projectedFields))
+              fds.add(fd);
+          }
+          ged.setFieldDefinitions(fds);
+        }
+
         // make sure to also augment the "GEOMETRY" and "TRACK_ID" fields
         FieldDefinition trackIdFD = eventGED.getFieldDefinition("TRACK_ID");
         FieldDefinition geometryFD = eventGED.getFieldDefinition("GEOMETRY");
@@ -307,6 +982,10 @@ public class TrackIdleDetector extends GeoEventProcessorBase
         try
         {
           gedManager.addGeoEventDefinition(ged);
+          // continue with the registered GED, the presence checks look it up by its GUID
+          GeoEventDefinition registered = gedManager.searchGeoEventDefinition(gedName, definition.getUri().toString());
+          if (registered != null)
+            ged = registered;
         }
         catch (GeoEventDefinitionManagerException e)
         {
@@ -325,152 +1004,947 @@ public class TrackIdleDetector extends GeoEventProcessorBase
     return ged;
   }
 
-  private boolean hasGeometryMoved(String cacheKey, MapGeometry geom1, MapGeometry geom2, double tolerance)
+  // other geometries than points are compared by their envelope center, and corners in Envelope mode
+  private boolean hasGeometryMoved(TrackIdleKey cacheKey, MapGeometry geom1, TrackIdleState idleState, double tolerance, boolean trace)
   {
-    if (geom1 != null && geom1.getGeometry() != null && geom1.getGeometry().getType() == Type.Point && geom2 != null && geom2.getGeometry() != null && geom2.getGeometry().getType() == Type.Point)
-    {
-      Point corePt1 = (Point) geom1.getGeometry();
-      Point corePt2 = (Point) geom2.getGeometry();
-      double meters = 0.0;
-      try
-      {
-        meters = GeometryEngine.geodesicDistanceOnWGS84(corePt1, corePt2);
-        LOGGER.trace("TRACK_MOVED_X_METERS", cacheKey, meters);
-      }
-      catch (Throwable error)
-      {
-        if (LOGGER.isDebugEnabled())
-          LOGGER.warn("DISTANCE_FAILURE", error, cacheKey);
-        else
-          LOGGER.warn("DISTANCE_FAILURE", cacheKey);
-      }
-
-      double feet = meter2feet(meters);
-      if (feet >= tolerance)
-        return true;
-      else
-        return false;
-    }
-    else
+    TrackIdleDistanceStrategy strategy = getDistanceStrategy(geom1.getSpatialReference());
+    Geometry geometry = geom1.getGeometry();
+    if (geometry.getType() == Type.Point)
     {
-      throw new RuntimeException(LOGGER.translate("INVALID_GEOMETRY_TYPE"));
+      Point corePt1 = (Point) geometry;
+      return hasPositionMoved(cacheKey, strategy, corePt1.getX(), corePt1.getY(), idleState.getX(), idleState.getY(), tolerance, trace);
     }
+
+    Envelope2D envelope = ENVELOPE.get();
+    geometry.queryEnvelope2D(envelope);
+    if (hasPositionMoved(cacheKey, strategy, envelope.getCenterX(), envelope.getCenterY(), idleState.getX(), idleState.getY(), tolerance, trace))
+      return true;
+    // the extent of a restored track is unknown, it is only compared by its center until it is anchored again
+    if (geometryComparison != TrackIdleGeometryComparison.Envelope || !idleState.hasExtent())
+      return false;
+    return hasPositionMoved(cacheKey, strategy, envelope.xmin, envelope.ymin, idleState.getX() - idleState.getExtentX(), idleState.getY() - idleState.getExtentY(), tolerance, trace)
+        || hasPositionMoved(cacheKey, strategy, envelope.xmax, envelope.ymax, idleState.getX() + idleState.getExtentX(), idleState.getY() + idleState.getExtentY(), tolerance, trace);
   }
 
-  private double meter2feet(double meter)
+  // resolved once per wkid, the last strategy used is checked first
+  // the spatial reference of a wkid is known once a track has been anchored in it
+  private TrackIdleDistanceStrategy getDistanceStrategy(int wkid)
   {
-    return meter * 3.28084;
+    return getDistanceStrategy(spatialReferences.get(wkid));
   }
 
-  private GeoEvent createTrackIdleGeoEvent(GeoEventDefinition ged, TrackIdleState idleState, boolean isIdle, boolean reportIdleDuration, GeoEvent geoEvent) throws MessagingException
+  private TrackIdleDistanceStrategy getDistanceStrategy(SpatialReference sr)
   {
-    if (geoEventCreator == null)
-      return null;
+    if (sr == null)
+      return TrackIdleDistanceStrategy.GEODESIC;
+    int wkid = sr.getID();
+    TrackIdleDistanceStrategy strategy = lastDistanceStrategy;
+    if (strategy != null && strategy.getWkid() == wkid && wkid != 0)
+      return strategy;
+    // custom spatial references have no wkid to cache them by
+    if (wkid == 0)
+      return TrackIdleDistanceStrategy.of(sr);
 
-    GeoEvent idleGeoEvent = null;
-    try
+    strategy = distanceStrategies.get(wkid);
+    if (strategy == null)
     {
-      idleGeoEvent = geoEventCreator.create(ged.getName(), definition.getUri().toString());
-      idleGeoEvent.setField("idle", isIdle);
-      idleGeoEvent.setField("idleStart", idleState.getStartTime());
-
-      if (reportIdleDuration)
-        idleGeoEvent.setField("idleDuration", idleState.getIdleDuration());
-      else
-        idleGeoEvent.setField("idleDuration", 0);
+      strategy = TrackIdleDistanceStrategy.of(sr);
+      if (distanceStrategies.putIfAbsent(wkid, strategy) == null)
+        LOGGER.info("DISTANCE_STRATEGY", wkid, strategy, strategy.getMetersPerUnit());
+    }
+    lastDistanceStrategy = strategy;
+    return strategy;
+  }
 
-      if (keepFields)
-      {
-        for (FieldDefinition fd : geoEvent.getGeoEventDefinition().getFieldDefinitions())
-        {
-          idleGeoEvent.setField(fd.getName(), geoEvent.getField(fd.getName()));
-        }
-      }
+  private boolean hasPositionMoved(TrackIdleKey cacheKey, TrackIdleDistanceStrategy strategy, double x, double y, double anchorX, double anchorY, double tolerance, boolean trace)
+  {
+    if (strategy.isPlanar())
+    {
+      // projected coordinates: the Euclidean distance is exact and far cheaper than the geodesic
+      double meters = strategy.planarMeters(anchorX, anchorY, x, y);
+      if (trace)
+        LOGGER.trace("TRACK_MOVED_X_METERS", cacheKey, meters);
+      return meter2feet(meters) >= tolerance;
+    }
+
+    if (distanceMode == TrackIdleDistanceMode.Tiered)
+    {
+      // settle the clear cases with the cheap bound, only the band around the tolerance needs the geodesic
+      int comparison = TrackIdleDistance.compareToTolerance(anchorX, anchorY, x, y, toleranceMeters);
+      if (comparison != TrackIdleDistance.AMBIGUOUS)
+        return comparison == TrackIdleDistance.BEYOND;
+    }
+
+    Point corePt1 = POSITION_POINT.get();
+    corePt1.setXY(x, y);
+    Point corePt2 = ANCHOR_POINT.get();
+    corePt2.setXY(anchorX, anchorY);
+    double meters = 0.0;
+    try
+    {
+      meters = GeometryEngine.geodesicDistanceOnWGS84(corePt1, corePt2);
+      if (trace)
+        LOGGER.trace("TRACK_MOVED_X_METERS", cacheKey, meters);
+    }
+    catch (Throwable error)
+    {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.warn("DISTANCE_FAILURE", error, cacheKey);
       else
+        LOGGER.warn("DISTANCE_FAILURE", cacheKey);
+    }
+
+    double feet = meter2feet(meters);
+    if (feet >= tolerance)
+      return true;
+    else
+      return false;
+  }
+
+  private double meter2feet(double meter)
+  {
+    return meter * TrackIdleDistance.FEET_PER_METER;
+  }
+
+  private void setAnchorPosition(TrackIdleState idleState, MapGeometry geometry)
+  {
+    SpatialReference sr = geometry.getSpatialReference();
+    int wkid = (sr != null) ? sr.getID() : 0;
+    if (sr != null && !spatialReferences.containsKey(wkid))
+      spatialReferences.putIfAbsent(wkid, sr);
+
+    Geometry shape = geometry.getGeometry();
+    if (shape.getType() == Type.Point)
+    {
+      Point point = (Point) shape;
+      idleState.setPosition(point.getX(), point.getY(), wkid);
+      idleState.setShape(null, 0, 0);
+    }
+    else
+    {
+      // anchored at the center of the envelope, the shape is kept as is for the notifications
+      Envelope2D envelope = ENVELOPE.get();
+      shape.queryEnvelope2D(envelope);
+      idleState.setPosition(envelope.getCenterX(), envelope.getCenterY(), wkid);
+      idleState.setShape(shape, (envelope.xmax - envelope.xmin) / 2, (envelope.ymax - envelope.ymin) / 2);
+    }
+  }
+
+  private MapGeometry toMapGeometry(TrackIdleNotification notification)
+  {
+    if (!notification.hasPosition())
+      return null;
+    Geometry shape = (notification.getShape() != null) ? notification.getShape() : new Point(notification.getX(), notification.getY());
+    return new MapGeometry(shape, spatialReferences.get(notification.getWkid()));
+  }
+
+  // called while holding the track lock, returns null when the notification is queued
+  private GeoEvent notifyTrackIdle(TrackIdleState idleState, boolean isIdle, boolean reportIdleDuration, GeoEvent geoEvent, long eventTime, boolean trace)
+  {
+    TrackIdleNotification notification = new TrackIdleNotification(idleState, false, isIdle, (reportIdleDuration) ? idleState.getIdleDuration() : 0, (isIdle) ? idleState.getIdleTier() : 0, geoEvent, trace);
+    TrackIdleNotificationWorker worker = notificationWorker;
+    if (worker != null)
+    {
+      // set previous time to the current GeoEvent time once the notification is on its way
+      if (worker.offer(notification))
+        idleState.setPreviousTime(eventTime);
+      return null;
+    }
+
+    GeoEvent idleGeoEvent = createTrackIdleGeoEvent(notification);
+    // set previous time to the current GeoEvent time
+    if (idleGeoEvent != null)
+      idleState.setPreviousTime(eventTime);
+    return idleGeoEvent;
+  }
+
+  private GeoEvent createTrackIdleGeoEvent(TrackIdleNotification notification)
+  {
+    if (geoEventCreator == null)
+      return null;
+
+    long startNanos = System.nanoTime();
+    GeoEvent geoEvent = notification.getGeoEvent();
+    boolean trace = notification.isTraced();
+    GeoEvent idleGeoEvent = null;
+    try
+    {
+      TrackIdleOutputDefinition output = getTrackIdleOutput(notification.getInputDefinition());
+      GeoEventDefinition ged = output.getOutputDefinition();
+      if (ged == null)
       {
-        if (LOGGER.isTraceEnabled())
-        {
-          LOGGER.trace("SETTING_IDLE_NOTIFICATION_FIELD", "TRACK_ID", idleState.getTrackId());
-          LOGGER.trace("SETTING_IDLE_NOTIFICATION_FIELD", "GEOMETRY", idleState.getGeometry());
-        }
-        idleGeoEvent.setField("TRACK_ID", idleState.getTrackId());
-        idleGeoEvent.setField("GEOMETRY", idleState.getGeometry());
+        metrics.notificationUnresolved();
+        return null;
+      }
+      TrackIdleCopyPlan copyPlan = output.getCopyPlan();
+      idleGeoEvent = geoEventCreator.create(ged.getName(), definition.getUri().toString());
+      copyPlan.setIdleFields(idleGeoEvent, notification.isIdle(), notification.getIdleDuration(), new Date(notification.getIdleStart()), notification.getIdleTier());
 
-        // Update from the new event if possible
-        for (FieldDefinition fd : geoEvent.getGeoEventDefinition().getFieldDefinitions())
+      if (!keepFields || geoEvent == null)
+      {
+        MapGeometry anchorGeometry = toMapGeometry(notification);
+        if (trace)
         {
-          if (fd.getTags().contains("TRACK_ID"))
-          {
-            if (idleGeoEvent.getField(fd.getName()) != null)
-            {
-              if (LOGGER.isTraceEnabled())
-                LOGGER.trace("UPDATING_EXISTING_FIELD_VALUE", fd.getName(), geoEvent.getField(fd.getName()));
-              idleGeoEvent.setField(fd.getName(), geoEvent.getField(fd.getName()));
-            }
-            else
-            {
-              if (LOGGER.isTraceEnabled())
-                LOGGER.trace("UPDATING_TRACK_ID_TAG_INSTEAD", fd.getName(), geoEvent.getField(fd.getName()));
-              idleGeoEvent.setField("TRACK_ID", geoEvent.getField(fd.getName()));
-            }
-          }
-          else if (fd.getTags().contains("GEOMETRY"))
-          {
-            if (idleGeoEvent.getField(fd.getName()) != null)
-            {
-              if (LOGGER.isTraceEnabled())
-                LOGGER.trace("UPDATING_GEOMETRY_FIELD", fd.getName(), geoEvent.getField(fd.getName()));
-            idleGeoEvent.setField(fd.getName(), geoEvent.getField(fd.getName()));
-          }
-            else
-            {
-              if (LOGGER.isTraceEnabled())
-                LOGGER.trace("UPDATING_GEOMETRY_TAG_INSTEAD", fd.getName(), geoEvent.getField(fd.getName()));
-              idleGeoEvent.setField("GEOMETRY", geoEvent.getField(fd.getName()));
-            }
-          }
+          LOGGER.trace("SETTING_IDLE_NOTIFICATION_FIELD", "TRACK_ID", notification.getTrackId());
+          LOGGER.trace("SETTING_IDLE_NOTIFICATION_FIELD", "GEOMETRY", anchorGeometry);
         }
+        copyPlan.setTrackIdAndGeometry(idleGeoEvent, notification.getTrackId(), anchorGeometry);
       }
+      // copy the input fields, or update TRACK_ID and GEOMETRY from the new event; notifications raised by the idle
+      // timer have no event
+      if (geoEvent != null)
+        copyPlan.copyFields(geoEvent, idleGeoEvent);
 
       idleGeoEvent.setProperty(GeoEventPropertyName.TYPE, "event");
       idleGeoEvent.setProperty(GeoEventPropertyName.OWNER_ID, getId());
       idleGeoEvent.setProperty(GeoEventPropertyName.OWNER_URI, definition.getUri());
-
-      // set previous time to the current GeoEvent time
-      idleState.setPreviousTime(geoEvent.getStartTime());
     }
     catch (Exception error)
     {
       idleGeoEvent = null;
+      // the output GED may have been removed or changed in the GED Manager
+      invalidateTrackIdleGED(notification.getInputDefinition());
       if (LOGGER.isDebugEnabled())
-        LOGGER.warn("GEOEVENT_CREATION_ERROR", error, geoEvent);
+        LOGGER.warn("GEOEVENT_CREATION_ERROR", error, (geoEvent != null) ? geoEvent : notification);
       else
-        LOGGER.warn("GEOEVENT_CREATION_ERROR", geoEvent);
+        LOGGER.warn("GEOEVENT_CREATION_ERROR", (geoEvent != null) ? geoEvent : notification);
     }
 
     if (idleGeoEvent != null)
-      LOGGER.trace("RELEASING_IDLE_EVENT", idleGeoEvent);
+    {
+      metrics.notificationCreated(notification.isIdle(), System.nanoTime() - startNanos);
+      if (trace)
+        LOGGER.trace("RELEASING_IDLE_EVENT", idleGeoEvent);
+    }
 
     return idleGeoEvent;
   }
 
-  private String buildCacheKey(GeoEvent geoEvent)
+  // the returned key is a per-thread probe, copy it before storing it
+  private TrackIdleKey buildCacheKey(GeoEvent geoEvent)
   {
     if (geoEvent != null && geoEvent.getTrackId() != null)
     {
       GeoEventDefinition definition = geoEvent.getGeoEventDefinition();
-      return definition.getOwner() + "/" + definition.getName() + "/" + geoEvent.getTrackId();
+      return PROBE_KEY.get().set(getKeyPrefix(definition), geoEvent.getTrackId());
     }
     return null;
   }
 
+  private TrackIdleKey.Prefix getKeyPrefix(GeoEventDefinition definition)
+  {
+    String guid = definition.getGuid();
+    TrackIdleKey.Prefix prefix = (guid != null) ? keyPrefixes.get(guid) : null;
+    if (prefix == null || !prefix.matches(definition))
+    {
+      // new or changed GeoEvent Definition
+      prefix = new TrackIdleKey.Prefix(definition.getOwner(), definition.getName());
+      if (guid != null)
+        keyPrefixes.put(guid, prefix);
+    }
+    return prefix;
+  }
+
+  private void startIdleTimer()
+  {
+    stopIdleTimer();
+    if (!detectIdleWithoutEvents)
+      return;
+
+    idleTimingWheel = new TrackIdleTimingWheel(idleTimerResolution, System.currentTimeMillis());
+    // one-off: tracks that were already known before the timer was (re)configured
+    for (TrackIdleState idleState : trackIdleStates.values())
+    {
+      if (!idleState.isIdling())
+        scheduleIdleTimer(idleState);
+      else
+        scheduleNextIdleTier(idleState);
+    }
+
+    idleTimer = newDaemonScheduler("TrackIdleDetector-IdleTimer-" + getId());
+    idleTimer.scheduleAtFixedRate(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          onIdleTimer();
+        }
+      }, idleTimerResolution, idleTimerResolution, TimeUnit.MILLISECONDS);
+  }
+
+  private void stopIdleTimer()
+  {
+    if (idleTimer != null)
+    {
+      idleTimer.shutdownNow();
+      idleTimer = null;
+    }
+    if (idleTimingWheel != null)
+    {
+      for (TrackIdleState idleState : trackIdleStates.values())
+        idleTimingWheel.cancel(idleState);
+      idleTimingWheel = null;
+    }
+  }
+
+  private void scheduleIdleTimer(TrackIdleState idleState)
+  {
+    TrackIdleTimingWheel wheel = idleTimingWheel;
+    if (wheel != null)
+      wheel.schedule(idleState, idleState.getAnchorArrivalTime() + idleLimit * 1000);
+  }
+
+  // called while holding the track lock; like the first deadline, the deadline of the next tier counts from the arrival
+  // of the anchor, never from its event time
+  private void scheduleNextIdleTier(TrackIdleState idleState)
+  {
+    TrackIdleTimingWheel wheel = idleTimingWheel;
+    if (wheel == null)
+      return;
+    int tier = idleState.getIdleTier();
+    if (tier < idleLimits.length)
+      wheel.schedule(idleState, idleState.getAnchorArrivalTime() + idleLimits[tier] * 1000);
+    else
+      wheel.cancel(idleState);
+  }
+
+  private void cancelIdleTimer(TrackIdleState idleState)
+  {
+    TrackIdleTimingWheel wheel = idleTimingWheel;
+    if (wheel != null)
+      wheel.cancel(idleState);
+  }
+
+  // rollups are aligned on the epoch, daily rollups cover UTC days
+  private void startRollupTimer()
+  {
+    stopRollupTimer();
+    if (!emitRollups || rollupInterval <= 0)
+      return;
+
+    long period = rollupInterval * 1000;
+    long now = System.currentTimeMillis();
+    rollupTimer = newDaemonScheduler("TrackIdleDetector-Rollup-" + getId());
+    rollupTimer.scheduleAtFixedRate(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          onRollupTimer();
+        }
+      }, period - now % period, period, TimeUnit.MILLISECONDS);
+  }
+
+  private void stopRollupTimer()
+  {
+    if (rollupTimer != null)
+    {
+      rollupTimer.shutdownNow();
+      rollupTimer = null;
+    }
+  }
+
+  // an idle episode counts in the period in which it ends
+  private void onRollupTimer()
+  {
+    long period = rollupInterval * 1000;
+    long periodEnd = System.currentTimeMillis() / period * period;
+    Date start = new Date(periodEnd - period);
+    Date end = new Date(periodEnd);
+    TrackIdleStateStore store = trackIdleStates;
+    for (TrackIdleState trackState : store.values())
+    {
+      try
+      {
+        GeoEvent rollupGeoEvent = null;
+        synchronized (store.lockFor(trackState.getKey()))
+        {
+          // the off-heap store iterates over copies, work on the stored state
+          TrackIdleState idleState = store.get(trackState.getKey());
+          if (idleState == null || (idleState.getIdleCount() == 0 && !idleState.isIdling()))
+            continue;
+          rollupGeoEvent = createTrackRollupGeoEvent(idleState, start, end);
+          idleState.setRollup(0, 0, 0);
+          markDirty(idleState);
+          store.update(idleState);
+        }
+        send(rollupGeoEvent);
+      }
+      catch (Exception error)
+      {
+        if (LOGGER.isDebugEnabled())
+          LOGGER.warn("ROLLUP_FAILURE", error, trackState.getTrackId());
+        else
+          LOGGER.warn("ROLLUP_FAILURE", trackState.getTrackId());
+      }
+    }
+  }
+
+  private GeoEvent createTrackRollupGeoEvent(TrackIdleState idleState, Date periodStart, Date periodEnd) throws Exception
+  {
+    if (geoEventCreator == null || trackRollupGed == null)
+      return null;
+
+    GeoEvent rollupGeoEvent = geoEventCreator.create(trackRollupGed.getName(), definition.getUri().toString());
+    rollupGeoEvent.setField("TRACK_ID", idleState.getTrackId());
+    rollupGeoEvent.setField("periodStart", periodStart);
+    rollupGeoEvent.setField("periodEnd", periodEnd);
+    rollupGeoEvent.setField("idleCount", idleState.getIdleCount());
+    rollupGeoEvent.setField("totalIdleDuration", idleState.getTotalIdleDuration());
+    rollupGeoEvent.setField("longestIdleDuration", idleState.getLongestIdleDuration());
+    rollupGeoEvent.setField("idle", idleState.isIdling());
+    rollupGeoEvent.setProperty(GeoEventPropertyName.TYPE, "event");
+    rollupGeoEvent.setProperty(GeoEventPropertyName.OWNER_ID, getId());
+    rollupGeoEvent.setProperty(GeoEventPropertyName.OWNER_URI, definition.getUri());
+    metrics.rollupReleased();
+    return rollupGeoEvent;
+  }
+
+  private void startCheckpoint()
+  {
+    stopCheckpoint();
+    File file = null;
+    if (checkpointDirectory != null && checkpointDirectory.trim().length() > 0 && getId() != null)
+      file = new File(checkpointDirectory.trim(), getId().replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint");
+
+    if (checkpoint != null && !checkpoint.getFile().equals(file))
+    {
+      checkpoint.close();
+      checkpoint = null;
+    }
+    if (file == null)
+      return;
+    if (checkpoint == null)
+      checkpoint = restoreCheckpoint(new TrackIdleCheckpoint(file));
+
+    checkpointer = newDaemonScheduler("TrackIdleDetector-Checkpoint-" + getId());
+    checkpointer.scheduleWithFixedDelay(new Runnable()
+      {
+        @Override
+        public void run()
+        {
+          writeCheckpoint();
+        }
+      }, checkpointInterval, checkpointInterval, TimeUnit.SECONDS);
+  }
+
+  private void stopCheckpoint()
+  {
+    if (checkpointer != null)
+    {
+      // let a running checkpoint finish, interrupting it would close the log channel
+      checkpointer.shutdown();
+      try
+      {
+        checkpointer.awaitTermination(checkpointInterval, TimeUnit.SECONDS);
+      }
+      catch (InterruptedException error)
+      {
+        Thread.currentThread().interrupt();
+      }
+      checkpointer = null;
+    }
+  }
+
+  private TrackIdleCheckpoint restoreCheckpoint(TrackIdleCheckpoint newCheckpoint)
+  {
+    Map<TrackIdleKey, TrackIdleState> restored;
+    try
+    {
+      restored = newCheckpoint.restore();
+    }
+    catch (IOException error)
+    {
+      // keep the unreadable log aside for inspection and start over
+      File corrupt = new File(newCheckpoint.getFile().getPath() + ".corrupt");
+      corrupt.delete();
+      newCheckpoint.getFile().renameTo(corrupt);
+      LOGGER.warn("CHECKPOINT_RESTORE_FAILURE", newCheckpoint.getFile(), error.getMessage());
+      return newCheckpoint;
+    }
+
+    // restored tracks count as updated now, the time to live starts over after a restart
+    long now = System.currentTimeMillis();
+    Map<TrackIdleKey.Prefix, GeoEventDefinition> definitions = new HashMap<TrackIdleKey.Prefix, GeoEventDefinition>();
+    int count = 0;
+    for (TrackIdleState idleState : restored.values())
+    {
+      TrackIdleKey.Prefix prefix = idleState.getKey().getPrefix();
+      if (!definitions.containsKey(prefix))
+        definitions.put(prefix, gedManager.searchGeoEventDefinition(prefix.getName(), prefix.getOwner()));
+      synchronized (trackIdleStates.lockFor(idleState.getKey()))
+      {
+        // tracks seen since the processor started take precedence
+        if (trackIdleStates.get(idleState.getKey()) != null)
+          continue;
+        idleState.setGeoEventDefinition(definitions.get(prefix));
+        idleState.setLastUpdated(now);
+        // logs written before the arrival times were kept start the idle timer over
+        if (idleState.getAnchorArrivalTime() == 0)
+          idleState.setAnchorArrivalTime(now);
+        trackIdleStates.put(idleState.getKey(), idleState);
+        updateIdleIndex(idleState);
+        // the idle timer already runs when the processor id is set after the properties
+        if (!idleState.isIdling())
+          scheduleIdleTimer(idleState);
+        else
+          scheduleNextIdleTier(idleState);
+      }
+      count++;
+    }
+    LOGGER.info("CHECKPOINT_RESTORED", count, newCheckpoint.getFile());
+    return newCheckpoint;
+  }
+
+  private void writeCheckpoint()
+  {
+    TrackIdleCheckpoint current = checkpoint;
+    if (current == null)
+      return;
+    try
+    {
+      synchronized (current)
+      {
+        current.checkpoint(trackIdleStates);
+      }
+    }
+    catch (Exception error)
+    {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.warn("CHECKPOINT_FAILURE", error, current.getFile());
+      else
+        LOGGER.warn("CHECKPOINT_FAILURE", current.getFile());
+    }
+  }
+
+  // called while holding the track lock
+  private void markDirty(TrackIdleState idleState)
+  {
+    TrackIdleCheckpoint current = checkpoint;
+    if (current != null)
+      current.markDirty(idleState, trackIdleStates instanceof TrackIdleOffHeapStateStore);
+  }
+
+  private void registerMetrics(String id)
+  {
+    try
+    {
+      metrics.register(id);
+    }
+    catch (JMException error)
+    {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.warn("METRICS_REGISTRATION_FAILURE", error, id);
+      else
+        LOGGER.warn("METRICS_REGISTRATION_FAILURE", id);
+    }
+  }
+
+  private void unregisterMetrics()
+  {
+    try
+    {
+      metrics.unregister();
+    }
+    catch (JMException error)
+    {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.warn("METRICS_REGISTRATION_FAILURE", error, getId());
+      else
+        LOGGER.warn("METRICS_REGISTRATION_FAILURE", getId());
+    }
+  }
+
+  /**
+   * Idle tracks anchored within the envelope, in the coordinates of the spatial reference wkid, empty unless the idle
+   * tracks are indexed.
+   */
+  public List<TrackIdleIndexEntry> findIdleTracks(int wkid, double xmin, double ymin, double xmax, double ymax)
+  {
+    TrackIdleSpatialIndex index = idleIndex;
+    return (index != null) ? index.queryEnvelope(wkid, xmin, ymin, xmax, ymax) : new ArrayList<TrackIdleIndexEntry>();
+  }
+
+  /**
+   * Idle tracks anchored within radiusMeters of a position in the spatial reference wkid, empty unless the idle tracks
+   * are indexed.
+   */
+  public List<TrackIdleIndexEntry> findIdleTracks(int wkid, double x, double y, double radiusMeters)
+  {
+    TrackIdleSpatialIndex index = idleIndex;
+    return (index != null) ? index.queryRadius(wkid, x, y, radiusMeters) : new ArrayList<TrackIdleIndexEntry>();
+  }
+
+  private void startNotificationWorker()
+  {
+    // the notifications queued so far are dispatched before the new configuration takes over
+    stopNotificationWorker();
+    if (!asyncNotifications)
+      return;
+
+    TrackIdleNotificationWorker worker = new TrackIdleNotificationWorker("TrackIdleDetector-Notifications-" + getId(), notificationQueueSize, notificationOverflow, this, metrics);
+    worker.start();
+    metrics.setNotificationQueue(worker.getQueue());
+    notificationWorker = worker;
+  }
+
+  private void stopNotificationWorker()
+  {
+    TrackIdleNotificationWorker worker = notificationWorker;
+    if (worker != null)
+    {
+      notificationWorker = null;
+      worker.stop();
+      metrics.setNotificationQueue(null);
+    }
+  }
+
+  // the off-heap store keeps no links to the idle timer, the reorder buffers or the spatial index
+  private boolean isOffHeapCompatible()
+  {
+    return !detectIdleWithoutEvents && eventTimeLateness <= 0 && !indexIdleTracks;
+  }
+
+  private void startStateStore()
+  {
+    // an incompatible configuration stays on the heap, validation reports it
+    boolean offHeap = stateStore == TrackIdleStateStoreType.OffHeap && isOffHeapCompatible();
+    TrackIdleStateStore current = trackIdleStates;
+    if (offHeap && current instanceof TrackIdleOffHeapStateStore && ((TrackIdleOffHeapStateStore) current).getMaxTrackIdLength() == offHeapTrackIdLength)
+      return;
+    if (!offHeap && current instanceof TrackIdleStateCache)
+      return;
+
+    // carry the tracks over to the new store
+    TrackIdleStateStore store = (offHeap) ? new TrackIdleOffHeapStateStore(offHeapTrackIdLength) : new TrackIdleStateCache();
+    for (TrackIdleState idleState : current.values())
+    {
+      synchronized (current.lockFor(idleState.getKey()))
+      {
+        store.put(idleState.getKey(), idleState);
+      }
+    }
+    trackIdleStates = store;
+    metrics.setStateStore(store);
+  }
+
+  private void startIdleIndex()
+  {
+    TrackIdleSpatialIndex current = idleIndex;
+    if (indexIdleTracks && current != null && current.getCellMeters() == idleIndexCellSize)
+      return;
+
+    // rebuild the index from the tracks, the entries of a previous index are dropped with it
+    TrackIdleSpatialIndex index = (indexIdleTracks) ? new TrackIdleSpatialIndex(idleIndexCellSize, this::getDistanceStrategy) : null;
+    idleIndex = index;
+    for (TrackIdleState idleState : trackIdleStates.values())
+    {
+      synchronized (trackIdleStates.lockFor(idleState.getKey()))
+      {
+        idleState.indexEntry = null;
+        if (index != null)
+          index.update(idleState);
+      }
+    }
+  }
+
+  // called while holding the track lock
+  private void updateIdleIndex(TrackIdleState idleState)
+  {
+    TrackIdleSpatialIndex index = idleIndex;
+    if (index != null)
+      index.update(idleState);
+  }
+
+  private void removeFromIdleIndex(TrackIdleState idleState)
+  {
+    TrackIdleSpatialIndex index = idleIndex;
+    if (index != null)
+      index.remove(idleState);
+  }
+
+  public TrackIdleMetrics getMetrics()
+  {
+    return metrics;
+  }
+
+  private ScheduledExecutorService newDaemonScheduler(final String name)
+  {
+    return Executors.newSingleThreadScheduledExecutor(new ThreadFactory()
+      {
+        @Override
+        public Thread newThread(Runnable runnable)
+        {
+          Thread thread = new Thread(runnable, name);
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+  }
+
+  private void onIdleTimer()
+  {
+    TrackIdleTimingWheel wheel = idleTimingWheel;
+    if (wheel == null)
+      return;
+
+    long now = System.currentTimeMillis();
+    trackIdleStates.evict(now, this);
+    for (TrackIdleState idleState : wheel.advance(now))
+    {
+      try
+      {
+        GeoEvent idleGeoEvent = null;
+        synchronized (trackIdleStates.lockFor(idleState.getKey()))
+        {
+          // the track may have been reported in its next tier by an incoming event, or evicted, in the meantime
+          if (idleState.getIdleTier() >= idleLimits.length || !idleState.hasPosition() || trackIdleStates.get(idleState.getKey()) != idleState)
+            continue;
+
+          // the track has not reported since its anchor arrived, the wheel never fires before the deadline
+          long idleMillis = now - idleState.getAnchorArrivalTime();
+          int idleTier = idleTierOf(idleMillis / 1000.0);
+          if (idleTier <= idleState.getIdleTier())
+          {
+            scheduleNextIdleTier(idleState);
+            continue;
+          }
+          double idleDuration = Math.round(idleMillis / 100.0) / 10.0;
+          boolean trace = isTraced(idleState.getTrackId(), now);
+          if (trace)
+            LOGGER.trace("IDLE_TIMER_EXPIRED", idleState.getTrackId(), idleDuration);
+
+          idleState.setIdleDuration(idleDuration);
+          idleState.setIdleTier(idleTier);
+          // the notification stands for the event time the track reached this idle duration at
+          idleGeoEvent = notifyTrackIdle(idleState, true, true, null, idleState.getStartTime() + idleMillis, trace);
+          idleState.setIdling(true);
+          scheduleNextIdleTier(idleState);
+          updateIdleIndex(idleState);
+          markDirty(idleState);
+        }
+        send(idleGeoEvent);
+      }
+      catch (Exception error)
+      {
+        if (LOGGER.isDebugEnabled())
+          LOGGER.warn("IDLE_TIMER_FAILURE", error, idleState.getTrackId());
+        else
+          LOGGER.warn("IDLE_TIMER_FAILURE", idleState.getTrackId());
+      }
+    }
+  }
+
+  @Override
+  public void onEviction(TrackIdleKey cacheKey, TrackIdleState idleState, boolean expired)
+  {
+    cancelIdleTimer(idleState);
+    removeFromIdleIndex(idleState);
+    if (traceEnabled)
+      LOGGER.trace("TRACK_EVICTED", cacheKey, expired);
+    if (idleState.reorderBuffer != null)
+    {
+      idleState.reorderBuffer.clear();
+      reorderingStates.remove(idleState);
+    }
+    metrics.trackEvicted(expired);
+    TrackIdleCheckpoint current = checkpoint;
+    if (current != null)
+      current.markRemoved(idleState.getKey());
+    if (emitTrackExpired)
+    {
+      try
+      {
+        // queued behind the pending notifications of the track in asynchronous mode
+        TrackIdleNotification notification = new TrackIdleNotification(idleState, true, idleState.isIdling(), idleState.isIdling() ? idleState.getIdleDuration() : 0, idleState.getIdleTier(), null, false);
+        TrackIdleNotificationWorker worker = notificationWorker;
+        if (worker != null)
+          worker.offer(notification);
+        else
+          send(createTrackExpiredGeoEvent(notification));
+      }
+      catch (Exception error)
+      {
+        if (LOGGER.isDebugEnabled())
+          LOGGER.warn("TRACK_EXPIRED_FAILURE", error, cacheKey);
+        else
+          LOGGER.warn("TRACK_EXPIRED_FAILURE", cacheKey);
+      }
+    }
+  }
+
+  private GeoEvent createTrackExpiredGeoEvent(TrackIdleNotification notification) throws Exception
+  {
+    if (geoEventCreator == null || trackExpiredGed == null)
+      return null;
+
+    GeoEvent expiredGeoEvent = geoEventCreator.create(trackExpiredGed.getName(), definition.getUri().toString());
+    expiredGeoEvent.setField("TRACK_ID", notification.getTrackId());
+    expiredGeoEvent.setField("idle", notification.isIdle());
+    expiredGeoEvent.setField("idleDuration", notification.getIdleDuration());
+    expiredGeoEvent.setField("idleStart", new Date(notification.getIdleStart()));
+    // a definition registered before the idle tiers has no idleTier field
+    if (trackExpiredGed.getIndexOf("idleTier") >= 0)
+      expiredGeoEvent.setField("idleTier", notification.getIdleTier());
+    expiredGeoEvent.setField("lastUpdated", new Date(notification.getLastUpdated()));
+    expiredGeoEvent.setField("GEOMETRY", toMapGeometry(notification));
+    expiredGeoEvent.setProperty(GeoEventPropertyName.TYPE, "event");
+    expiredGeoEvent.setProperty(GeoEventPropertyName.OWNER_ID, getId());
+    expiredGeoEvent.setProperty(GeoEventPropertyName.OWNER_URI, definition.getUri());
+    return expiredGeoEvent;
+  }
+
+  // on the notification worker thread
+  @Override
+  public void onNotification(TrackIdleNotification notification)
+  {
+    try
+    {
+      send((notification.isExpired()) ? createTrackExpiredGeoEvent(notification) : createTrackIdleGeoEvent(notification));
+    }
+    catch (Exception error)
+    {
+      if (LOGGER.isDebugEnabled())
+        LOGGER.warn("NOTIFICATION_FAILURE", error, notification.getTrackId());
+      else
+        LOGGER.warn("NOTIFICATION_FAILURE", notification.getTrackId());
+    }
+  }
+
+  @Override
+  public void shutdown()
+  {
+    unregisterMetrics();
+    if (service != null)
+      service.unregister(getId(), this);
+    stopReorderTimer();
+    flushReorderBuffers();
+    stopIdleTimer();
+    stopRollupTimer();
+    stopNotificationWorker();
+    stopCheckpoint();
+    writeCheckpoint();
+    if (checkpoint != null)
+    {
+      checkpoint.close();
+      checkpoint = null;
+    }
+    super.shutdown();
+  }
+
+  @Override
+  public boolean isGeoEventMutator()
+  {
+    return true;
+  }
+
+  @Override
+  public void send(GeoEvent geoEvent) throws MessagingException
+  {
+    if (geoEventProducer != null && geoEvent != null)
+      geoEventProducer.send(geoEvent);
+  }
+
+  @Override
+  public EventDestination getEventDestination()
+  {
+    return (geoEventProducer != null) ? geoEventProducer.getEventDestination() : null;
+  }
+
+  @Override
+  public List<EventDestination> getEventDestinations()
+  {
+    return (geoEventProducer != null) ? Arrays.asList(geoEventProducer.getEventDestination()) : new ArrayList<EventDestination>();
+  }
+
+  @Override
+  public void disconnect()
+  {
+    if (geoEventProducer != null)
+      geoEventProducer.disconnect();
+  }
+
+  @Override
+  public boolean isConnected()
+  {
+    return (geoEventProducer != null) ? geoEventProducer.isConnected() : false;
+  }
+
+  @Override
+  public String getStatusDetails()
+  {
+    return (geoEventProducer != null) ? geoEventProducer.getStatusDetails() : "";
+  }
+
+  @Override
+  public void setup() throws MessagingException
+  {
+    ;
+  }
+
+  @Override
+  public void init() throws MessagingException
+  {
+    ;
+  }
+
+  @Override
+  public void update(Observable o, Object arg)
+  {
+    ;
+  }
+
+  @Override
+  public void setId(String id)
+  {
+    String previousId = getId();
+    super.setId(id);
+    if (messaging != null)
+      geoEventProducer = messaging.createGeoEventProducer(new EventDestination(id + ":event"));
+    registerMetrics(id);
+    if (service != null)
+    {
+      service.unregister(previousId, this);
+      service.register(id, this);
+    }
+    // the checkpoint file is named after the processor id
+    if (checkpointDirectory != null && checkpointDirectory.trim().length() > 0)
+      startCheckpoint();
+  }
+
   public void setMessaging(Messaging messaging)
   {
+    this.messaging = messaging;
     geoEventCreator = messaging.createGeoEventCreator();
   }
 
+  void setService(TrackIdleDetectorService service)
+  {
+    this.service = service;
+  }
+
   public void setManager(GeoEventDefinitionManager gedManager)
   {
     this.gedManager = gedManager;
   }
+
+  // positions of the events of one track in a batch
+  private static final class TrackEvents
+  {
+    final TrackIdleKey cacheKey;
+    int[]              indexes = new int[4];
+    int                size;
+
+    TrackEvents(TrackIdleKey cacheKey)
+    {
+      this.cacheKey = cacheKey;
+    }
+
+    void add(int index)
+    {
+      if (size == indexes.length)
+        indexes = Arrays.copyOf(indexes, size * 2);
+      indexes[size++] = index;
+    }
+  }
 }
@@ -41,9 +41,11 @@ import com.esri.ges.processor.GeoEventProcessorDefinitionBase;
 
 public class TrackIdleDetectorDefinition extends GeoEventProcessorDefinitionBase
 {
-  private static final BundleLogger LOGGER                      = BundleLoggerFactory.getLogger(TrackIdleDetector.class);
+  private static final BundleLogger LOGGER                         = BundleLoggerFactory.getLogger(TrackIdleDetector.class);
 
-  public static final String        DEFAULT_TRACK_IDLE_GED_NAME = "TrackIdle";
+  public static final String        DEFAULT_TRACK_IDLE_GED_NAME    = "TrackIdle";
+  public static final String        DEFAULT_TRACK_EXPIRED_GED_NAME = "TrackIdleExpired";
+  public static final String        DEFAULT_TRACK_ROLLUP_GED_NAME  = "TrackIdleRollup";
 
   public TrackIdleDetectorDefinition()
   {
@@ -52,14 +54,52 @@ public class TrackIdleDetectorDefinition extends GeoEventProcessorDefinitionBase
       List<LabeledValue> allowableValues = new ArrayList<>();
       allowableValues.add(new LabeledValue("OnChange", "OnChange"));
       allowableValues.add(new LabeledValue("Continuous", "Continuous"));
+      allowableValues.add(new LabeledValue("Interval", "Interval"));
 
       propertyDefinitions.put("notificationMode", new PropertyDefinition("notificationMode", PropertyType.String, "OnChange", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_MODE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_MODE_DESC}", true, false, allowableValues));
+      propertyDefinitions.put("notificationInterval", new PropertyDefinition("notificationInterval", PropertyType.Long, 60, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_INTERVAL_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_INTERVAL_DESC}", "notificationMode=Interval", true, false));
       propertyDefinitions.put("idleLimit", new PropertyDefinition("idleLimit", PropertyType.Long, 300, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_LIMIT_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_LIMIT_DESC}", true, false));
+      propertyDefinitions.put("idleTierLimits", new PropertyDefinition("idleTierLimits", PropertyType.String, "", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_TIER_LIMITS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_TIER_LIMITS_DESC}", false, false));
       propertyDefinitions.put("tolerance", new PropertyDefinition("tolerance", PropertyType.Long, 120, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TOLERANCE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TOLERANCE_DESC}", true, false));
+      List<LabeledValue> distanceModes = new ArrayList<>();
+      distanceModes.add(new LabeledValue("Tiered", "Tiered"));
+      distanceModes.add(new LabeledValue("Exact", "Exact"));
+      propertyDefinitions.put("distanceMode", new PropertyDefinition("distanceMode", PropertyType.String, "Tiered", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_DISTANCE_MODE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_DISTANCE_MODE_DESC}", false, false, distanceModes));
+      List<LabeledValue> geometryComparisons = new ArrayList<>();
+      geometryComparisons.add(new LabeledValue("Center", "Center"));
+      geometryComparisons.add(new LabeledValue("Envelope", "Envelope"));
+      propertyDefinitions.put("geometryComparison", new PropertyDefinition("geometryComparison", PropertyType.String, "Center", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_GEOMETRY_COMPARISON_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_GEOMETRY_COMPARISON_DESC}", false, false, geometryComparisons));
       propertyDefinitions.put("keepFields", new PropertyDefinition("keepFields", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_KEEP_FIELDS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_KEEP_FIELDS_DESC}", true, false));
+      propertyDefinitions.put("projectedFields", new PropertyDefinition("projectedFields", PropertyType.String, "", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_PROJECTED_FIELDS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_PROJECTED_FIELDS_DESC}", "keepFields=true", false, false));
       propertyDefinitions.put("outGedSuffixName", new PropertyDefinition("outGedSuffixName", PropertyType.String, "TrackIdle", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_OUT_GED_SUFFIX_NAME_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_OUT_GED_SUFFIX_NAME_DESC}", "keepFields=true", true, false));
       propertyDefinitions.put("accumulateIdleDuration", new PropertyDefinition("accumulateIdleDuration", PropertyType.Boolean, true, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ACCUMULATE_IDLE_DURATION_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ACCUMULATE_IDLE_DURATION_DESC}", true, false));
       propertyDefinitions.put("reportIdleDurationWhileNotIdle", new PropertyDefinition("reportIdleDurationWhileNotIdle", PropertyType.Boolean, true, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_REPORT_IDLE_DURATION_WHILE_NOT_IDLE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_REPORT_IDLE_DURATION_WHILE_NOT_IDLE_DESC}", true, false));
+      propertyDefinitions.put("detectIdleWithoutEvents", new PropertyDefinition("detectIdleWithoutEvents", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_DETECT_IDLE_WITHOUT_EVENTS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_DETECT_IDLE_WITHOUT_EVENTS_DESC}", true, false));
+      propertyDefinitions.put("idleTimerResolution", new PropertyDefinition("idleTimerResolution", PropertyType.Long, 1000, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_TIMER_RESOLUTION_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_TIMER_RESOLUTION_DESC}", "detectIdleWithoutEvents=true", true, false));
+      propertyDefinitions.put("maxTracks", new PropertyDefinition("maxTracks", PropertyType.Long, 0, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_MAX_TRACKS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_MAX_TRACKS_DESC}", false, false));
+      propertyDefinitions.put("trackTimeToLive", new PropertyDefinition("trackTimeToLive", PropertyType.Long, 0, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACK_TIME_TO_LIVE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACK_TIME_TO_LIVE_DESC}", false, false));
+      propertyDefinitions.put("emitTrackExpired", new PropertyDefinition("emitTrackExpired", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EMIT_TRACK_EXPIRED_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EMIT_TRACK_EXPIRED_DESC}", false, false));
+      List<LabeledValue> stateStores = new ArrayList<>();
+      stateStores.add(new LabeledValue("OnHeap", "OnHeap"));
+      stateStores.add(new LabeledValue("OffHeap", "OffHeap"));
+      propertyDefinitions.put("stateStore", new PropertyDefinition("stateStore", PropertyType.String, "OnHeap", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_STATE_STORE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_STATE_STORE_DESC}", false, false, stateStores));
+      propertyDefinitions.put("offHeapTrackIdLength", new PropertyDefinition("offHeapTrackIdLength", PropertyType.Integer, 64, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_OFF_HEAP_TRACK_ID_LENGTH_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_OFF_HEAP_TRACK_ID_LENGTH_DESC}", "stateStore=OffHeap", false, false));
+      propertyDefinitions.put("emitRollups", new PropertyDefinition("emitRollups", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EMIT_ROLLUPS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EMIT_ROLLUPS_DESC}", false, false));
+      propertyDefinitions.put("rollupInterval", new PropertyDefinition("rollupInterval", PropertyType.Long, 86400, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ROLLUP_INTERVAL_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ROLLUP_INTERVAL_DESC}", "emitRollups=true", false, false));
+      propertyDefinitions.put("checkpointDirectory", new PropertyDefinition("checkpointDirectory", PropertyType.String, "", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_CHECKPOINT_DIRECTORY_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_CHECKPOINT_DIRECTORY_DESC}", false, false));
+      propertyDefinitions.put("checkpointInterval", new PropertyDefinition("checkpointInterval", PropertyType.Long, 30, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_CHECKPOINT_INTERVAL_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_CHECKPOINT_INTERVAL_DESC}", false, false));
+      propertyDefinitions.put("eventTimeLateness", new PropertyDefinition("eventTimeLateness", PropertyType.Long, 0, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EVENT_TIME_LATENESS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_EVENT_TIME_LATENESS_DESC}", false, false));
+      propertyDefinitions.put("reorderBufferSize", new PropertyDefinition("reorderBufferSize", PropertyType.Integer, 8, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_REORDER_BUFFER_SIZE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_REORDER_BUFFER_SIZE_DESC}", false, false));
+      propertyDefinitions.put("indexIdleTracks", new PropertyDefinition("indexIdleTracks", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_INDEX_IDLE_TRACKS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_INDEX_IDLE_TRACKS_DESC}", false, false));
+      propertyDefinitions.put("idleIndexCellSize", new PropertyDefinition("idleIndexCellSize", PropertyType.Double, 1000.0, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_INDEX_CELL_SIZE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_IDLE_INDEX_CELL_SIZE_DESC}", "indexIdleTracks=true", false, false));
+      propertyDefinitions.put("asyncNotifications", new PropertyDefinition("asyncNotifications", PropertyType.Boolean, false, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ASYNC_NOTIFICATIONS_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_ASYNC_NOTIFICATIONS_DESC}", false, false));
+      propertyDefinitions.put("notificationQueueSize", new PropertyDefinition("notificationQueueSize", PropertyType.Integer, 8192, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_QUEUE_SIZE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_QUEUE_SIZE_DESC}", "asyncNotifications=true", false, false));
+      List<LabeledValue> notificationOverflows = new ArrayList<>();
+      notificationOverflows.add(new LabeledValue("Block", "Block"));
+      notificationOverflows.add(new LabeledValue("Drop", "Drop"));
+      propertyDefinitions.put("notificationOverflow", new PropertyDefinition("notificationOverflow", PropertyType.String, "Block", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_OVERFLOW_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_NOTIFICATION_OVERFLOW_DESC}", "asyncNotifications=true", false, false, notificationOverflows));
+      propertyDefinitions.put("traceTrackId", new PropertyDefinition("traceTrackId", PropertyType.String, "", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACE_TRACK_ID_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACE_TRACK_ID_DESC}", false, false));
+      propertyDefinitions.put("traceSampleRate", new PropertyDefinition("traceSampleRate", PropertyType.Long, 1, "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACE_SAMPLE_RATE_LBL}", "${com.esri.geoevent.processor.trackidledetector-processor.PROCESSOR_TRACE_SAMPLE_RATE_DESC}", false, false));
 
       // create the default Track Idle GED
       GeoEventDefinition ged = new DefaultGeoEventDefinition();
@@ -69,9 +109,38 @@ public class TrackIdleDetectorDefinition extends GeoEventProcessorDefinitionBase
       fds.add(new DefaultFieldDefinition("idle", FieldType.Boolean));
       fds.add(new DefaultFieldDefinition("idleDuration", FieldType.Double));
       fds.add(new DefaultFieldDefinition("idleStart", FieldType.Date, "TIME_START"));
+      fds.add(new DefaultFieldDefinition("idleTier", FieldType.Integer));
       fds.add(new DefaultFieldDefinition("geometry", FieldType.Geometry, "GEOMETRY"));
       ged.setFieldDefinitions(fds);
       geoEventDefinitions.put(ged.getName(), ged);
+
+      // create the Track Idle Expired GED, released when a Track is evicted from the cache
+      GeoEventDefinition expiredGed = new DefaultGeoEventDefinition();
+      expiredGed.setName(DEFAULT_TRACK_EXPIRED_GED_NAME);
+      List<FieldDefinition> expiredFds = new ArrayList<FieldDefinition>();
+      expiredFds.add(new DefaultFieldDefinition("trackId", FieldType.String, "TRACK_ID"));
+      expiredFds.add(new DefaultFieldDefinition("idle", FieldType.Boolean));
+      expiredFds.add(new DefaultFieldDefinition("idleDuration", FieldType.Double));
+      expiredFds.add(new DefaultFieldDefinition("idleStart", FieldType.Date, "TIME_START"));
+      expiredFds.add(new DefaultFieldDefinition("idleTier", FieldType.Integer));
+      expiredFds.add(new DefaultFieldDefinition("lastUpdated", FieldType.Date));
+      expiredFds.add(new DefaultFieldDefinition("geometry", FieldType.Geometry, "GEOMETRY"));
+      expiredGed.setFieldDefinitions(expiredFds);
+      geoEventDefinitions.put(expiredGed.getName(), expiredGed);
+
+      // create the Track Idle Rollup GED, released for every Track that was idle during a rollup period
+      GeoEventDefinition rollupGed = new DefaultGeoEventDefinition();
+      rollupGed.setName(DEFAULT_TRACK_ROLLUP_GED_NAME);
+      List<FieldDefinition> rollupFds = new ArrayList<FieldDefinition>();
+      rollupFds.add(new DefaultFieldDefinition("trackId", FieldType.String, "TRACK_ID"));
+      rollupFds.add(new DefaultFieldDefinition("periodStart", FieldType.Date, "TIME_START"));
+      rollupFds.add(new DefaultFieldDefinition("periodEnd", FieldType.Date, "TIME_END"));
+      rollupFds.add(new DefaultFieldDefinition("idleCount", FieldType.Integer));
+      rollupFds.add(new DefaultFieldDefinition("totalIdleDuration", FieldType.Double));
+      rollupFds.add(new DefaultFieldDefinition("longestIdleDuration", FieldType.Double));
+      rollupFds.add(new DefaultFieldDefinition("idle", FieldType.Boolean));
+      rollupGed.setFieldDefinitions(rollupFds);
+      geoEventDefinitions.put(rollupGed.getName(), rollupGed);
     }
     catch (Exception error)
     {
@@ -24,6 +24,11 @@
 
 package com.esri.geoevent.processor.trackidledetector;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 import com.esri.ges.core.component.ComponentException;
 import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
 import com.esri.ges.messaging.Messaging;
@@ -32,8 +37,9 @@ import com.esri.ges.processor.GeoEventProcessorServiceBase;
 
 public class TrackIdleDetectorService extends GeoEventProcessorServiceBase
 {
-  private Messaging                 messaging;
-  private GeoEventDefinitionManager gedManager;
+  private Messaging                            messaging;
+  private GeoEventDefinitionManager            gedManager;
+  private final Map<String, TrackIdleDetector> detectors  = new ConcurrentHashMap<String, TrackIdleDetector>();
 
   public TrackIdleDetectorService()
   {
@@ -46,9 +52,39 @@ public class TrackIdleDetectorService extends GeoEventProcessorServiceBase
     TrackIdleDetector detector = new TrackIdleDetector(definition);
     detector.setMessaging(messaging);
     detector.setManager(gedManager);
+    detector.setService(this);
     return detector;
   }
 
+  public TrackIdleDetector getDetector(String processorId)
+  {
+    return (processorId != null) ? detectors.get(processorId) : null;
+  }
+
+  public List<TrackIdleIndexEntry> findIdleTracks(String processorId, int wkid, double xmin, double ymin, double xmax, double ymax)
+  {
+    TrackIdleDetector detector = getDetector(processorId);
+    return (detector != null) ? detector.findIdleTracks(wkid, xmin, ymin, xmax, ymax) : new ArrayList<TrackIdleIndexEntry>();
+  }
+
+  public List<TrackIdleIndexEntry> findIdleTracks(String processorId, int wkid, double x, double y, double radiusMeters)
+  {
+    TrackIdleDetector detector = getDetector(processorId);
+    return (detector != null) ? detector.findIdleTracks(wkid, x, y, radiusMeters) : new ArrayList<TrackIdleIndexEntry>();
+  }
+
+  void register(String processorId, TrackIdleDetector detector)
+  {
+    if (processorId != null)
+      detectors.put(processorId, detector);
+  }
+
+  void unregister(String processorId, TrackIdleDetector detector)
+  {
+    if (processorId != null)
+      detectors.remove(processorId, detector);
+  }
+
   public void setMessaging(Messaging messaging)
   {
     this.messaging = messaging;
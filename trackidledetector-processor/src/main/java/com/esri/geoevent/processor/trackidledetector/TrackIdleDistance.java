@@ -0,0 +1,81 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+/**
+ * Equirectangular screen of the tolerance check, distances within 1% of the tolerance are left to the exact geodesic
+ * distance.
+ */
+public final class TrackIdleDistance
+{
+  public static final int     WITHIN         = -1;
+  public static final int     AMBIGUOUS      = 0;
+  public static final int     BEYOND         = 1;
+
+  public static final double  FEET_PER_METER = 3.28084;
+
+  private static final double MEAN_RADIUS    = 6371008.8;
+  private static final double RADIANS        = Math.PI / 180.0;
+  private static final double SAFETY_MARGIN  = 0.01;
+  // the approximation degrades close to the poles and over long distances, leave those to the exact computation
+  private static final double MAX_LATITUDE   = 80.0;
+  private static final double MAX_DELTA      = 1.0;
+
+  private TrackIdleDistance()
+  {
+  }
+
+  public static double toDegrees(double meters)
+  {
+    return meters / (MEAN_RADIUS * RADIANS);
+  }
+
+  // AMBIGUOUS when the approximation is not conclusive
+  public static int compareToTolerance(double x1, double y1, double x2, double y2, double toleranceMeters)
+  {
+    double deltaY = y2 - y1;
+    double deltaX = x2 - x1;
+    if (deltaX > 180.0)
+      deltaX -= 360.0;
+    else if (deltaX < -180.0)
+      deltaX += 360.0;
+
+    if (Math.abs(y1) > MAX_LATITUDE || Math.abs(deltaY) > MAX_DELTA || Math.abs(deltaX) > MAX_DELTA)
+      return AMBIGUOUS;
+
+    double meanLatitude = (y1 + y2) * 0.5 * RADIANS;
+    double dx = deltaX * RADIANS * Math.cos(meanLatitude) * MEAN_RADIUS;
+    double dy = deltaY * RADIANS * MEAN_RADIUS;
+    double squared = dx * dx + dy * dy;
+
+    double lower = toleranceMeters * (1.0 - SAFETY_MARGIN);
+    double upper = toleranceMeters * (1.0 + SAFETY_MARGIN);
+    if (squared < lower * lower)
+      return WITHIN;
+    if (squared > upper * upper)
+      return BEYOND;
+    return AMBIGUOUS;
+  }
+}
@@ -0,0 +1,169 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.Locale;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.esri.core.geometry.SpatialReference;
+
+/**
+ * Planar distance for projected coordinate systems, scaled by the cosine of the latitude for the Mercator ones, WGS84
+ * geodesic distance otherwise.
+ */
+public final class TrackIdleDistanceStrategy
+{
+  public static final TrackIdleDistanceStrategy GEODESIC                = new TrackIdleDistanceStrategy(-1, false, false, 1.0);
+
+  // the default XY tolerance of a projected coordinate system is 1 millimeter in its linear unit, the one of a
+  // geographic coordinate system a tiny fraction of a degree
+  private static final double                   MILLIMETER              = 0.001;
+  private static final double                   MIN_PROJECTED_TOLERANCE = 1e-6;
+  private static final double[]                 LINEAR_UNITS            = { 1.0, 0.3048, 1200.0 / 3937.0, 0.9144, 20.1168, 0.201168 };
+  // Web Mercator and World Mercator, their scale grows with the latitude
+  private static final int[]                    MERCATOR_WKIDS          = { 3857, 102100, 102113, 900913, 3785, 3395, 54004 };
+  private static final double                   MERCATOR_RADIUS         = 6378137.0;
+  private static final Pattern                  WKT_UNIT                = Pattern.compile("UNIT\\[\"[^\"]*\",\\s*([0-9.Ee+-]+)\\]");
+  private static final Pattern                  WKT_PROJECTION          = Pattern.compile("PROJECTION\\[\"([^\"]*)\"\\]");
+
+  private final int                             wkid;
+  private final boolean                         planar;
+  private final boolean                         mercator;
+  private final double                          metersPerUnit;
+
+  private TrackIdleDistanceStrategy(int wkid, boolean planar, boolean mercator, double metersPerUnit)
+  {
+    this.wkid = wkid;
+    this.planar = planar;
+    this.mercator = mercator;
+    this.metersPerUnit = metersPerUnit;
+  }
+
+  public static TrackIdleDistanceStrategy of(SpatialReference sr)
+  {
+    if (sr == null)
+      return GEODESIC;
+    int wkid = sr.getID();
+    for (int mercatorWkid : MERCATOR_WKIDS)
+    {
+      if (wkid == mercatorWkid)
+        return new TrackIdleDistanceStrategy(wkid, true, true, 1.0);
+    }
+
+    // a spatial reference given by its well-known text names its projection and linear unit
+    String wkt = sr.getText();
+    if (wkt != null && !wkt.isEmpty())
+    {
+      if (!wkt.regionMatches(true, 0, "PROJCS", 0, 6))
+        return new TrackIdleDistanceStrategy(wkid, false, false, 1.0);
+      Matcher unit = WKT_UNIT.matcher(wkt);
+      double metersPerUnit = Double.NaN;
+      while (unit.find())
+        metersPerUnit = Double.parseDouble(unit.group(1));
+      if (Double.isNaN(metersPerUnit) || metersPerUnit <= 0)
+        return new TrackIdleDistanceStrategy(wkid, false, false, 1.0);
+      Matcher projection = WKT_PROJECTION.matcher(wkt);
+      return new TrackIdleDistanceStrategy(wkid, true, projection.find() && isMercator(projection.group(1)), metersPerUnit);
+    }
+
+    // otherwise the default tolerance gives the unit away, a tolerance of no known unit is no projected one to rely on
+    double tolerance = sr.getTolerance();
+    if (tolerance > MIN_PROJECTED_TOLERANCE)
+    {
+      double metersPerUnit = toLinearUnit(MILLIMETER / tolerance);
+      if (!Double.isNaN(metersPerUnit))
+        return new TrackIdleDistanceStrategy(wkid, true, false, metersPerUnit);
+    }
+    return new TrackIdleDistanceStrategy(wkid, false, false, 1.0);
+  }
+
+  // Mercator, Mercator_Auxiliary_Sphere, Popular_Visualisation_Pseudo_Mercator, not Transverse_Mercator
+  private static boolean isMercator(String projection)
+  {
+    String name = projection.toUpperCase(Locale.ROOT);
+    return name.startsWith("MERCATOR") || name.endsWith("PSEUDO_MERCATOR");
+  }
+
+  // the tolerances are rounded, snap to meters, international or US survey feet, yards, chains or links
+  private static double toLinearUnit(double metersPerUnit)
+  {
+    for (double unit : LINEAR_UNITS)
+    {
+      if (Math.abs(metersPerUnit - unit) < unit * 1e-4)
+        return unit;
+    }
+    return Double.NaN;
+  }
+
+  public int getWkid()
+  {
+    return wkid;
+  }
+
+  public boolean isPlanar()
+  {
+    return planar;
+  }
+
+  public double getMetersPerUnit()
+  {
+    return metersPerUnit;
+  }
+
+  public boolean isMercator()
+  {
+    return mercator;
+  }
+
+  public double planarMeters(double x1, double y1, double x2, double y2)
+  {
+    double dx = x2 - x1;
+    double dy = y2 - y1;
+    double meters = Math.sqrt(dx * dx + dy * dy) * metersPerUnit;
+    // the cosine of the latitude of y is 1 / cosh(y / R) on the Mercator sphere
+    return (mercator) ? meters / Math.cosh((y1 + y2) * 0.5 * metersPerUnit / MERCATOR_RADIUS) : meters;
+  }
+
+  // half the side, in units, of a square around a position at y that holds every position within meters
+  public double toUnits(double meters, double y)
+  {
+    double units = meters / metersPerUnit;
+    if (!mercator)
+      return units;
+    // the scale is largest at the far edge, enlarge the square until it covers it
+    double scaled = units;
+    for (int i = 0; i < 3; i++)
+      scaled = units * Math.cosh((Math.abs(y) + scaled) * metersPerUnit / MERCATOR_RADIUS);
+    return scaled;
+  }
+
+  @Override
+  public String toString()
+  {
+    return (mercator) ? "mercator" : (planar) ? "planar" : "geodesic";
+  }
+}
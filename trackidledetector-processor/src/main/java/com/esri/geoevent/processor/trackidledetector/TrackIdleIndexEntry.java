@@ -0,0 +1,89 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+/**
+ * Immutable snapshot of an idle track held by the {@link TrackIdleSpatialIndex}.
+ */
+public class TrackIdleIndexEntry
+{
+  private final TrackIdleKey key;
+  private final double       x;
+  private final double       y;
+  private final int          wkid;
+  private final long         idleSince;
+
+  // cell links, maintained by the TrackIdleSpatialIndex holding the entry
+  TrackIdleSpatialIndex      index;
+  long                       cell;
+  TrackIdleIndexEntry        prev;
+  TrackIdleIndexEntry        next;
+
+  public TrackIdleIndexEntry(TrackIdleKey key, double x, double y, int wkid, long idleSince)
+  {
+    this.key = key;
+    this.x = x;
+    this.y = y;
+    this.wkid = wkid;
+    this.idleSince = idleSince;
+  }
+
+  public TrackIdleKey getKey()
+  {
+    return key;
+  }
+
+  public String getTrackId()
+  {
+    return key.getTrackId();
+  }
+
+  public double getX()
+  {
+    return x;
+  }
+
+  public double getY()
+  {
+    return y;
+  }
+
+  public int getWkid()
+  {
+    return wkid;
+  }
+
+  public long getIdleSince()
+  {
+    return idleSince;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TrackIdleIndexEntry [key=" + key + ", x=" + x + ", y=" + y + ", wkid=" + wkid + ", idleSince=" + idleSince + "]";
+  }
+}
@@ -0,0 +1,149 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Track cache key: the GeoEvent Definition owner and name, shared as a {@link Prefix}, and the TRACK_ID.
+ */
+public class TrackIdleKey
+{
+  private Prefix prefix;
+  private String trackId;
+  private int    hash;
+
+  public static class Prefix
+  {
+    private final String owner;
+    private final String name;
+    private final int    hash;
+
+    public Prefix(String owner, String name)
+    {
+      this.owner = owner;
+      this.name = name;
+      this.hash = 31 * String.valueOf(owner).hashCode() + String.valueOf(name).hashCode();
+    }
+
+    public String getOwner()
+    {
+      return owner;
+    }
+
+    public String getName()
+    {
+      return name;
+    }
+
+    public boolean matches(GeoEventDefinition ged)
+    {
+      return same(owner, ged.getOwner()) && same(name, ged.getName());
+    }
+
+    private static boolean same(String a, String b)
+    {
+      return a == b || (a != null && a.equals(b));
+    }
+
+    @Override
+    public int hashCode()
+    {
+      return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj)
+    {
+      if (this == obj)
+        return true;
+      if (!(obj instanceof Prefix))
+        return false;
+      Prefix other = (Prefix) obj;
+      return hash == other.hash && same(owner, other.owner) && same(name, other.name);
+    }
+
+    @Override
+    public String toString()
+    {
+      return owner + "/" + name;
+    }
+  }
+
+  public TrackIdleKey()
+  {
+  }
+
+  public TrackIdleKey(Prefix prefix, String trackId)
+  {
+    set(prefix, trackId);
+  }
+
+  public TrackIdleKey set(Prefix prefix, String trackId)
+  {
+    this.prefix = prefix;
+    this.trackId = trackId;
+    this.hash = 31 * prefix.hashCode() + trackId.hashCode();
+    return this;
+  }
+
+  public TrackIdleKey copy()
+  {
+    return new TrackIdleKey(prefix, trackId);
+  }
+
+  public Prefix getPrefix()
+  {
+    return prefix;
+  }
+
+  public String getTrackId()
+  {
+    return trackId;
+  }
+
+  @Override
+  public int hashCode()
+  {
+    return hash;
+  }
+
+  @Override
+  public boolean equals(Object obj)
+  {
+    if (this == obj)
+      return true;
+    if (!(obj instanceof TrackIdleKey))
+      return false;
+    TrackIdleKey other = (TrackIdleKey) obj;
+    return hash == other.hash && prefix.equals(other.prefix) && trackId.equals(other.trackId);
+  }
+
+  @Override
+  public String toString()
+  {
+    return prefix + "/" + trackId;
+  }
+}
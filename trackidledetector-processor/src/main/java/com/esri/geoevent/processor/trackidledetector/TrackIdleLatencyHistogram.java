@@ -0,0 +1,174 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram, every power of two is split into 16 linear buckets. Threads record into stripes picked by
+ * their id, merged on read.
+ */
+public class TrackIdleLatencyHistogram implements TrackIdleLatencyHistogramMBean
+{
+  private static final int        SUB_BUCKET_BITS = 4;
+  private static final int        SUB_BUCKETS     = 1 << SUB_BUCKET_BITS;
+  private static final int        BUCKETS         = (Long.SIZE - SUB_BUCKET_BITS) * SUB_BUCKETS;
+  // each stripe holds its buckets followed by the sum and the max of its values
+  private static final int        SUM             = BUCKETS;
+  private static final int        MAX             = BUCKETS + 1;
+  private static final int        MAX_STRIPES     = 64;
+
+  private final AtomicLongArray[] stripes;
+
+  public TrackIdleLatencyHistogram()
+  {
+    int processors = Math.min(MAX_STRIPES, Runtime.getRuntime().availableProcessors());
+    stripes = new AtomicLongArray[Integer.highestOneBit(Math.max(1, processors * 2 - 1))];
+    for (int i = 0; i < stripes.length; i++)
+      stripes[i] = new AtomicLongArray(BUCKETS + 2);
+  }
+
+  public void record(long nanos)
+  {
+    if (nanos < 0)
+      nanos = 0;
+    AtomicLongArray stripe = stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)];
+    stripe.incrementAndGet(indexOf(nanos));
+    stripe.addAndGet(SUM, nanos);
+    for (long max = stripe.get(MAX); nanos > max && !stripe.compareAndSet(MAX, max, nanos); max = stripe.get(MAX))
+      ;
+  }
+
+  @Override
+  public long getCount()
+  {
+    long count = 0;
+    for (AtomicLongArray stripe : stripes)
+    {
+      for (int i = 0; i < BUCKETS; i++)
+        count += stripe.get(i);
+    }
+    return count;
+  }
+
+  @Override
+  public double getMeanMicros()
+  {
+    long count = getCount();
+    long sum = 0;
+    for (AtomicLongArray stripe : stripes)
+      sum += stripe.get(SUM);
+    return (count > 0) ? sum / (count * 1000.0) : 0;
+  }
+
+  @Override
+  public double getMedianMicros()
+  {
+    return getPercentileMicros(50);
+  }
+
+  @Override
+  public double get99thPercentileMicros()
+  {
+    return getPercentileMicros(99);
+  }
+
+  @Override
+  public double get999thPercentileMicros()
+  {
+    return getPercentileMicros(99.9);
+  }
+
+  @Override
+  public double getMaxMicros()
+  {
+    return getMaxNanos() / 1000.0;
+  }
+
+  public double getPercentileMicros(double percentile)
+  {
+    long[] snapshot = new long[BUCKETS];
+    long count = 0;
+    for (AtomicLongArray stripe : stripes)
+    {
+      for (int i = 0; i < BUCKETS; i++)
+      {
+        long bucket = stripe.get(i);
+        snapshot[i] += bucket;
+        count += bucket;
+      }
+    }
+    if (count == 0)
+      return 0;
+
+    long max = getMaxNanos();
+    long rank = Math.max(1, (long) Math.ceil(count * percentile / 100.0));
+    long seen = 0;
+    for (int i = 0; i < snapshot.length; i++)
+    {
+      seen += snapshot[i];
+      if (seen >= rank)
+        return Math.min(highestValueOf(i), max) / 1000.0;
+    }
+    return max / 1000.0;
+  }
+
+  // values recorded concurrently may be partly lost
+  @Override
+  public void reset()
+  {
+    for (AtomicLongArray stripe : stripes)
+    {
+      for (int i = 0; i < stripe.length(); i++)
+        stripe.set(i, 0);
+    }
+  }
+
+  private long getMaxNanos()
+  {
+    long max = 0;
+    for (AtomicLongArray stripe : stripes)
+      max = Math.max(max, stripe.get(MAX));
+    return max;
+  }
+
+  static int indexOf(long value)
+  {
+    if (value < SUB_BUCKETS)
+      return (int) value;
+    int shift = (Long.SIZE - 1 - Long.numberOfLeadingZeros(value)) - SUB_BUCKET_BITS;
+    return (shift + 1) * SUB_BUCKETS + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+  }
+
+  static long highestValueOf(int index)
+  {
+    if (index < SUB_BUCKETS)
+      return index;
+    int shift = index / SUB_BUCKETS - 1;
+    long subBucket = SUB_BUCKETS + (index % SUB_BUCKETS);
+    return ((subBucket + 1) << shift) - 1;
+  }
+}
@@ -0,0 +1,329 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latencies of one Track Idle Detector, registered as com.esri.geoevent.processor:type=TrackIdleDetector
+ * MBeans named after the processor id.
+ */
+public class TrackIdleMetrics implements TrackIdleMetricsMBean
+{
+  public static final String                  DOMAIN                   = "com.esri.geoevent.processor";
+
+  private volatile TrackIdleStateStore        trackIdleStates;
+  private final LongAdder                     eventsProcessed          = new LongAdder();
+  private final LongAdder                     eventsDropped            = new LongAdder();
+  private final LongAdder                     eventsRejected           = new LongAdder();
+  private final LongAdder                     eventsFailed             = new LongAdder();
+  private final LongAdder                     eventsLate               = new LongAdder();
+  private final LongAdder                     idleNotifications        = new LongAdder();
+  private final LongAdder                     notIdleNotifications     = new LongAdder();
+  private final LongAdder                     tracksExpired            = new LongAdder();
+  private final LongAdder                     tracksEvicted            = new LongAdder();
+  private final LongAdder                     rollupsReleased          = new LongAdder();
+  private final LongAdder                     notificationsDropped     = new LongAdder();
+  private final LongAdder                     notificationBackPressure = new LongAdder();
+  private final LongAdder                     notificationsUnresolved  = new LongAdder();
+  private final TrackIdleLatencyHistogram     processLatency           = new TrackIdleLatencyHistogram();
+  private final TrackIdleLatencyHistogram     movementLatency          = new TrackIdleLatencyHistogram();
+  private final TrackIdleLatencyHistogram     notificationLatency      = new TrackIdleLatencyHistogram();
+  private final List<ObjectName>              registeredNames          = new ArrayList<ObjectName>();
+  private volatile long                       resetTime                = System.nanoTime();
+  private volatile TrackIdleNotificationQueue notificationQueue;
+
+  public TrackIdleMetrics(TrackIdleStateStore trackIdleStates)
+  {
+    this.trackIdleStates = trackIdleStates;
+  }
+
+  public void setStateStore(TrackIdleStateStore trackIdleStates)
+  {
+    this.trackIdleStates = trackIdleStates;
+  }
+
+  public void eventProcessed(long nanos)
+  {
+    eventsProcessed.increment();
+    processLatency.record(nanos);
+  }
+
+  public void eventDropped()
+  {
+    eventsDropped.increment();
+  }
+
+  public void eventRejected()
+  {
+    eventsRejected.increment();
+  }
+
+  public void eventFailed()
+  {
+    eventsFailed.increment();
+  }
+
+  public void eventLate()
+  {
+    eventsLate.increment();
+  }
+
+  public void movementChecked(long nanos)
+  {
+    movementLatency.record(nanos);
+  }
+
+  public void notificationCreated(boolean isIdle, long nanos)
+  {
+    if (isIdle)
+      idleNotifications.increment();
+    else
+      notIdleNotifications.increment();
+    notificationLatency.record(nanos);
+  }
+
+  public void trackEvicted(boolean expired)
+  {
+    if (expired)
+      tracksExpired.increment();
+    else
+      tracksEvicted.increment();
+  }
+
+  public void rollupReleased()
+  {
+    rollupsReleased.increment();
+  }
+
+  public void notificationDropped()
+  {
+    notificationsDropped.increment();
+  }
+
+  public void notificationBackPressure()
+  {
+    notificationBackPressure.increment();
+  }
+
+  public void notificationUnresolved()
+  {
+    notificationsUnresolved.increment();
+  }
+
+  // null unless the notifications are asynchronous
+  public void setNotificationQueue(TrackIdleNotificationQueue notificationQueue)
+  {
+    this.notificationQueue = notificationQueue;
+  }
+
+  public TrackIdleLatencyHistogram getProcessLatency()
+  {
+    return processLatency;
+  }
+
+  public TrackIdleLatencyHistogram getMovementLatency()
+  {
+    return movementLatency;
+  }
+
+  public TrackIdleLatencyHistogram getNotificationLatency()
+  {
+    return notificationLatency;
+  }
+
+  @Override
+  public long getTrackCount()
+  {
+    return trackIdleStates.size();
+  }
+
+  @Override
+  public long getEventsProcessed()
+  {
+    return eventsProcessed.sum();
+  }
+
+  @Override
+  public long getEventsDropped()
+  {
+    return eventsDropped.sum();
+  }
+
+  @Override
+  public long getEventsRejected()
+  {
+    return eventsRejected.sum();
+  }
+
+  @Override
+  public long getEventsFailed()
+  {
+    return eventsFailed.sum();
+  }
+
+  @Override
+  public long getEventsLate()
+  {
+    return eventsLate.sum();
+  }
+
+  @Override
+  public double getEventsPerSecond()
+  {
+    double seconds = (System.nanoTime() - resetTime) / 1e9;
+    return (seconds > 0) ? eventsProcessed.sum() / seconds : 0;
+  }
+
+  @Override
+  public long getIdleNotifications()
+  {
+    return idleNotifications.sum();
+  }
+
+  @Override
+  public long getNotIdleNotifications()
+  {
+    return notIdleNotifications.sum();
+  }
+
+  @Override
+  public long getTracksExpired()
+  {
+    return tracksExpired.sum();
+  }
+
+  @Override
+  public long getTracksEvicted()
+  {
+    return tracksEvicted.sum();
+  }
+
+  @Override
+  public long getOffHeapBytes()
+  {
+    TrackIdleStateStore store = trackIdleStates;
+    return (store instanceof TrackIdleOffHeapStateStore) ? ((TrackIdleOffHeapStateStore) store).getCapacityBytes() : 0;
+  }
+
+  @Override
+  public long getRollupsReleased()
+  {
+    return rollupsReleased.sum();
+  }
+
+  @Override
+  public long getNotificationQueueSize()
+  {
+    TrackIdleNotificationQueue queue = notificationQueue;
+    return (queue != null) ? queue.size() : 0;
+  }
+
+  @Override
+  public long getNotificationsDropped()
+  {
+    return notificationsDropped.sum();
+  }
+
+  @Override
+  public long getNotificationBackPressure()
+  {
+    return notificationBackPressure.sum();
+  }
+
+  @Override
+  public long getNotificationsUnresolved()
+  {
+    return notificationsUnresolved.sum();
+  }
+
+  @Override
+  public void reset()
+  {
+    eventsProcessed.reset();
+    eventsDropped.reset();
+    eventsRejected.reset();
+    eventsFailed.reset();
+    eventsLate.reset();
+    idleNotifications.reset();
+    notIdleNotifications.reset();
+    tracksExpired.reset();
+    tracksEvicted.reset();
+    rollupsReleased.reset();
+    notificationsDropped.reset();
+    notificationBackPressure.reset();
+    notificationsUnresolved.reset();
+    processLatency.reset();
+    movementLatency.reset();
+    notificationLatency.reset();
+    resetTime = System.nanoTime();
+  }
+
+  // replaces the MBeans of a previous id
+  public synchronized void register(String id) throws JMException
+  {
+    unregister();
+    String name = DOMAIN + ":type=TrackIdleDetector,name=" + ObjectName.quote(id);
+    register(new ObjectName(name), this);
+    register(new ObjectName(name + ",stage=process"), processLatency);
+    register(new ObjectName(name + ",stage=movement"), movementLatency);
+    register(new ObjectName(name + ",stage=notification"), notificationLatency);
+  }
+
+  public synchronized void unregister() throws JMException
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    try
+    {
+      for (ObjectName name : registeredNames)
+      {
+        if (server.isRegistered(name))
+          server.unregisterMBean(name);
+      }
+    }
+    finally
+    {
+      registeredNames.clear();
+    }
+  }
+
+  private void register(ObjectName name, Object mbean) throws JMException
+  {
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    // a processor re-created with the same id takes over the name
+    if (server.isRegistered(name))
+      server.unregisterMBean(name);
+    server.registerMBean(mbean, name);
+    registeredNames.add(name);
+  }
+}
@@ -0,0 +1,153 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import com.esri.core.geometry.Geometry;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Immutable snapshot of a track at an idle transition, the notification is built from it later.
+ */
+public class TrackIdleNotification
+{
+  private final String             trackId;
+  private final GeoEventDefinition inputDefinition;
+  private final GeoEvent           geoEvent;
+  private final boolean            expired;
+  private final boolean            idle;
+  private final double             idleDuration;
+  private final long               idleStart;
+  private final int                idleTier;
+  private final long               lastUpdated;
+  private final boolean            hasPosition;
+  private final double             x;
+  private final double             y;
+  private final int                wkid;
+  private final Geometry           shape;
+  private final boolean            trace;
+
+  public TrackIdleNotification(TrackIdleState state, boolean expired, boolean idle, double idleDuration, int idleTier, GeoEvent geoEvent, boolean trace)
+  {
+    this.trackId = state.getTrackId();
+    this.inputDefinition = (geoEvent != null) ? geoEvent.getGeoEventDefinition() : state.getGeoEventDefinition();
+    this.geoEvent = geoEvent;
+    this.expired = expired;
+    this.idle = idle;
+    this.idleDuration = idleDuration;
+    this.idleStart = state.getStartTime();
+    this.idleTier = idleTier;
+    this.lastUpdated = state.getLastUpdated();
+    this.hasPosition = state.hasPosition();
+    this.x = state.getX();
+    this.y = state.getY();
+    this.wkid = state.getWkid();
+    this.shape = state.getShape();
+    this.trace = trace;
+  }
+
+  public String getTrackId()
+  {
+    return trackId;
+  }
+
+  public GeoEventDefinition getInputDefinition()
+  {
+    return inputDefinition;
+  }
+
+  // null for the idle timer and for expired tracks
+  public GeoEvent getGeoEvent()
+  {
+    return geoEvent;
+  }
+
+  public boolean isExpired()
+  {
+    return expired;
+  }
+
+  public boolean isIdle()
+  {
+    return idle;
+  }
+
+  public double getIdleDuration()
+  {
+    return idleDuration;
+  }
+
+  public long getIdleStart()
+  {
+    return idleStart;
+  }
+
+  public int getIdleTier()
+  {
+    return idleTier;
+  }
+
+  public long getLastUpdated()
+  {
+    return lastUpdated;
+  }
+
+  public boolean hasPosition()
+  {
+    return hasPosition;
+  }
+
+  public double getX()
+  {
+    return x;
+  }
+
+  public double getY()
+  {
+    return y;
+  }
+
+  public int getWkid()
+  {
+    return wkid;
+  }
+
+  public Geometry getShape()
+  {
+    return shape;
+  }
+
+  public boolean isTraced()
+  {
+    return trace;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TrackIdleNotification [trackId=" + trackId + ", expired=" + expired + ", idle=" + idle + ", idleDuration=" + idleDuration + ", idleTier=" + idleTier + "]";
+  }
+}
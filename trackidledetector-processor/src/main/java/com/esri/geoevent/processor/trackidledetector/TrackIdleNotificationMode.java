@@ -26,5 +26,5 @@ package com.esri.geoevent.processor.trackidledetector;
 
 public enum TrackIdleNotificationMode
 {
-  OnChange, Continuous
+  OnChange, Continuous, Interval
 }
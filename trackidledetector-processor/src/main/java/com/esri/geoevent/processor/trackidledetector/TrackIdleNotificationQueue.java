@@ -0,0 +1,115 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bounded lock-free ring buffer of notifications, any number of producers and a single consumer.
+ */
+public class TrackIdleNotificationQueue
+{
+  private final TrackIdleNotification[] slots;
+  private final AtomicLongArray         sequences;
+  private final int                     mask;
+  private final AtomicLong              tail = new AtomicLong();
+  private volatile long                 head;
+
+  public TrackIdleNotificationQueue(int capacity)
+  {
+    // rounded up to a power of two so that a position maps to its slot with a mask
+    int size = Integer.highestOneBit(Math.max(2, Math.min(capacity, 1 << 30)) - 1) << 1;
+    slots = new TrackIdleNotification[size];
+    sequences = new AtomicLongArray(size);
+    mask = size - 1;
+    for (int i = 0; i < size; i++)
+      sequences.set(i, i);
+  }
+
+  public int getCapacity()
+  {
+    return slots.length;
+  }
+
+  public boolean offer(TrackIdleNotification notification)
+  {
+    long position = tail.get();
+    while (true)
+    {
+      int index = (int) (position & mask);
+      long difference = sequences.get(index) - position;
+      if (difference == 0)
+      {
+        // the slot is free for this position, claim the position
+        if (tail.compareAndSet(position, position + 1))
+        {
+          slots[index] = notification;
+          // publishes the notification to the consumer
+          sequences.set(index, position + 1);
+          return true;
+        }
+        position = tail.get();
+      }
+      else if (difference < 0)
+      {
+        // the slot still holds the notification of the previous lap
+        return false;
+      }
+      else
+      {
+        // another producer claimed the position
+        position = tail.get();
+      }
+    }
+  }
+
+  // only called by the consumer
+  public TrackIdleNotification poll()
+  {
+    long position = head;
+    int index = (int) (position & mask);
+    // a claimed slot is only readable once its producer published the notification
+    if (sequences.get(index) != position + 1)
+      return null;
+    TrackIdleNotification notification = slots[index];
+    slots[index] = null;
+    // frees the slot for the producer of the next lap
+    sequences.set(index, position + slots.length);
+    head = position + 1;
+    return notification;
+  }
+
+  public int size()
+  {
+    return (int) Math.max(0, tail.get() - head);
+  }
+
+  public boolean isEmpty()
+  {
+    return size() == 0;
+  }
+}
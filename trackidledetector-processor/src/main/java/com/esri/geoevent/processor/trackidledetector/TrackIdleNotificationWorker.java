@@ -0,0 +1,164 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Single thread dispatching the queued notifications in queue order.
+ */
+public class TrackIdleNotificationWorker implements Runnable
+{
+  private static final long                   PARK_NANOS               = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long                   BACK_PRESSURE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+  private final TrackIdleNotificationQueue    queue;
+  private final TrackIdleNotificationOverflow overflow;
+  private final NotificationListener          listener;
+  private final TrackIdleMetrics              metrics;
+  private final Thread                        thread;
+  private final AtomicInteger                 producers                = new AtomicInteger();
+  private volatile boolean                    running                  = true;
+  private volatile boolean                    parked;
+
+  public interface NotificationListener
+  {
+    void onNotification(TrackIdleNotification notification);
+  }
+
+  public TrackIdleNotificationWorker(String name, int capacity, TrackIdleNotificationOverflow overflow, NotificationListener listener, TrackIdleMetrics metrics)
+  {
+    this.queue = new TrackIdleNotificationQueue(capacity);
+    this.overflow = overflow;
+    this.listener = listener;
+    this.metrics = metrics;
+    this.thread = new Thread(this, name);
+    this.thread.setDaemon(true);
+  }
+
+  public TrackIdleNotificationQueue getQueue()
+  {
+    return queue;
+  }
+
+  public void start()
+  {
+    thread.start();
+  }
+
+  // called while holding the track lock, returns false when the notification was dropped
+  public boolean offer(TrackIdleNotification notification)
+  {
+    // announced before looking at the flag, stop waits for the producers which saw the worker running
+    producers.incrementAndGet();
+    try
+    {
+      if (!running)
+      {
+        metrics.notificationDropped();
+        return false;
+      }
+      if (!queue.offer(notification))
+      {
+        if (overflow == TrackIdleNotificationOverflow.Drop)
+        {
+          metrics.notificationDropped();
+          return false;
+        }
+        metrics.notificationBackPressure();
+        do
+        {
+          LockSupport.unpark(thread);
+          LockSupport.parkNanos(this, BACK_PRESSURE_PARK_NANOS);
+        }
+        while (!queue.offer(notification));
+      }
+    }
+    finally
+    {
+      producers.decrementAndGet();
+    }
+    // the worker raises the flag before its last look at the queue, one of the two sees the other
+    if (parked)
+      LockSupport.unpark(thread);
+    return true;
+  }
+
+  // the notifications still being offered are dispatched on the calling thread, later offers are dropped
+  public void stop()
+  {
+    running = false;
+    LockSupport.unpark(thread);
+    boolean interrupted = false;
+    while (thread.isAlive())
+    {
+      try
+      {
+        thread.join();
+      }
+      catch (InterruptedException error)
+      {
+        interrupted = true;
+      }
+    }
+    // the worker is gone, this thread is the only consumer left
+    while (true)
+    {
+      TrackIdleNotification notification = queue.poll();
+      if (notification != null)
+        listener.onNotification(notification);
+      else if (producers.get() == 0 && queue.isEmpty())
+        break;
+      else
+        LockSupport.parkNanos(this, BACK_PRESSURE_PARK_NANOS);
+    }
+    if (interrupted)
+      Thread.currentThread().interrupt();
+  }
+
+  @Override
+  public void run()
+  {
+    while (true)
+    {
+      TrackIdleNotification notification = queue.poll();
+      if (notification != null)
+      {
+        listener.onNotification(notification);
+        continue;
+      }
+      if (!running && queue.isEmpty())
+        break;
+
+      parked = true;
+      if (running && queue.isEmpty())
+        LockSupport.parkNanos(this, PARK_NANOS);
+      parked = false;
+    }
+  }
+}
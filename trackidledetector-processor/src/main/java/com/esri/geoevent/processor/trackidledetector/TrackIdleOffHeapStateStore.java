@@ -0,0 +1,523 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Track state store keeping the states in fixed-size slots of direct {@link ByteBuffer} segments. get() loads a slot
+ * into a per-thread view that update() writes back; shapes, definitions and the idle timer, reorder buffer and index
+ * links are not kept. Tracks with a longer TRACK_ID than the slots hold stay on the heap.
+ */
+public class TrackIdleOffHeapStateStore implements TrackIdleStateStore
+{
+  private static final int                        SEGMENTS           = 256;
+  private static final int                        SEGMENT_SHIFT      = 56;
+  private static final int                        INITIAL_SLOTS      = 64;
+  private static final int                        EVICTION_BATCH     = 64;
+  private static final int                        EVICTION_SAMPLE    = 16;
+  private static final int                        MAX_SIZE_EVICTIONS = 8;
+
+  // slot layout, a zero hash marks a free slot
+  private static final int                        HASH               = 0;
+  private static final int                        PREFIX             = 8;
+  private static final int                        TRACK_ID_LENGTH    = 12;
+  private static final int                        START_TIME         = 16;
+  private static final int                        PREVIOUS_TIME      = 24;
+  private static final int                        LAST_UPDATED       = 32;
+  private static final int                        X                  = 40;
+  private static final int                        Y                  = 48;
+  private static final int                        EXTENT_X           = 56;
+  private static final int                        EXTENT_Y           = 64;
+  private static final int                        IDLE_DURATION      = 72;
+  private static final int                        WKID               = 80;
+  private static final int                        IDLE_TIER          = 84;
+  private static final int                        IDLING             = 88;
+  private static final int                        CHECKPOINT_DIRTY   = 89;
+  private static final int                        IDLE_COUNT         = 92;
+  private static final int                        TOTAL_IDLE         = 96;
+  private static final int                        LONGEST_IDLE       = 104;
+  private static final int                        TRACK_ID           = 112;
+
+  private final int                               maxTrackIdLength;
+  private final int                               slotSize;
+  private final Segment[]                         segments           = new Segment[SEGMENTS];
+  private final TrackIdleStateCache               overflow           = new TrackIdleStateCache();
+  private final Map<TrackIdleKey.Prefix, Integer> prefixIds          = new ConcurrentHashMap<TrackIdleKey.Prefix, Integer>();
+  private final List<TrackIdleKey.Prefix>         prefixes           = new ArrayList<TrackIdleKey.Prefix>();
+  private final ThreadLocal<TrackIdleState>       views              = ThreadLocal.withInitial(() -> new TrackIdleState(null, 0, Double.NaN, Double.NaN, 0));
+  private final ReentrantLock                     evictionLock       = new ReentrantLock();
+  private int                                     evictionSegment;
+  private int                                     evictionSlot;
+
+  private volatile long                           maxEntries;
+  private volatile long                           timeToLive;
+
+  // open-addressing table with linear probing, also the lock of the tracks it holds
+  private final class Segment
+  {
+    ByteBuffer   slots;
+    int          mask;
+    volatile int size;
+
+    Segment()
+    {
+      slots = ByteBuffer.allocateDirect(INITIAL_SLOTS * slotSize);
+      mask = INITIAL_SLOTS - 1;
+    }
+
+    // the slot of the track, or -1 - slot of the free slot where it would go
+    int find(long hash, int prefixId, String trackId)
+    {
+      int slot = (int) hash & mask;
+      while (true)
+      {
+        int offset = slot * slotSize;
+        long slotHash = slots.getLong(offset + HASH);
+        if (slotHash == 0)
+          return -1 - slot;
+        if (slotHash == hash && matches(offset, prefixId, trackId))
+          return slot;
+        slot = (slot + 1) & mask;
+      }
+    }
+
+    private boolean matches(int offset, int prefixId, String trackId)
+    {
+      if (slots.getInt(offset + PREFIX) != prefixId || slots.getInt(offset + TRACK_ID_LENGTH) != trackId.length())
+        return false;
+      for (int i = 0; i < trackId.length(); i++)
+      {
+        if (slots.getChar(offset + TRACK_ID + 2 * i) != trackId.charAt(i))
+          return false;
+      }
+      return true;
+    }
+
+    int insert(long hash, int prefixId, String trackId)
+    {
+      if ((size + 1) * 4L > (mask + 1) * 3L)
+        grow();
+      int slot = -1 - find(hash, prefixId, trackId);
+      int offset = slot * slotSize;
+      slots.putLong(offset + HASH, hash);
+      slots.putInt(offset + PREFIX, prefixId);
+      slots.putInt(offset + TRACK_ID_LENGTH, trackId.length());
+      for (int i = 0; i < trackId.length(); i++)
+        slots.putChar(offset + TRACK_ID + 2 * i, trackId.charAt(i));
+      size++;
+      return slot;
+    }
+
+    // shifts back the slots of the probe sequence, no tombstones
+    void delete(int slot)
+    {
+      int hole = slot;
+      int next = (hole + 1) & mask;
+      long hash;
+      while ((hash = slots.getLong(next * slotSize + HASH)) != 0)
+      {
+        int home = (int) hash & mask;
+        // the slot may move back into the hole unless its home lies between the hole and itself
+        if (((next - home) & mask) >= ((next - hole) & mask))
+        {
+          copy(slots, next, slots, hole);
+          hole = next;
+        }
+        next = (next + 1) & mask;
+      }
+      slots.putLong(hole * slotSize + HASH, 0);
+      size--;
+    }
+
+    private void grow()
+    {
+      long capacity = 2L * (mask + 1);
+      if (capacity * slotSize > Integer.MAX_VALUE)
+        throw new IllegalStateException("Off-heap track state segment full: " + size + " tracks");
+      ByteBuffer grown = ByteBuffer.allocateDirect((int) capacity * slotSize);
+      int grownMask = (int) capacity - 1;
+      for (int slot = 0; slot <= mask; slot++)
+      {
+        long hash = slots.getLong(slot * slotSize + HASH);
+        if (hash == 0)
+          continue;
+        int target = (int) hash & grownMask;
+        while (grown.getLong(target * slotSize + HASH) != 0)
+          target = (target + 1) & grownMask;
+        copy(slots, slot, grown, target);
+      }
+      // the previous slab is released with its buffer
+      slots = grown;
+      mask = grownMask;
+    }
+
+    private void copy(ByteBuffer from, int fromSlot, ByteBuffer to, int toSlot)
+    {
+      int fromOffset = fromSlot * slotSize;
+      int toOffset = toSlot * slotSize;
+      for (int i = 0; i < slotSize; i += 8)
+        to.putLong(toOffset + i, from.getLong(fromOffset + i));
+    }
+
+    void load(int slot, TrackIdleState state)
+    {
+      int offset = slot * slotSize;
+      state.setStartTime(slots.getLong(offset + START_TIME));
+      state.setPreviousTime(slots.getLong(offset + PREVIOUS_TIME));
+      state.setLastUpdated(slots.getLong(offset + LAST_UPDATED));
+      state.setPosition(slots.getDouble(offset + X), slots.getDouble(offset + Y), slots.getInt(offset + WKID));
+      state.setShape(null, slots.getDouble(offset + EXTENT_X), slots.getDouble(offset + EXTENT_Y));
+      state.setIdling(slots.get(offset + IDLING) != 0);
+      state.checkpointDirty = slots.get(offset + CHECKPOINT_DIRTY) != 0;
+      state.setIdleTier(slots.getInt(offset + IDLE_TIER));
+      state.setIdleDuration(slots.getDouble(offset + IDLE_DURATION));
+      state.setRollup(slots.getInt(offset + IDLE_COUNT), slots.getDouble(offset + TOTAL_IDLE), slots.getDouble(offset + LONGEST_IDLE));
+      state.setGeoEventDefinition(null);
+    }
+
+    void store(int slot, TrackIdleState state)
+    {
+      int offset = slot * slotSize;
+      slots.putLong(offset + START_TIME, state.getStartTime());
+      slots.putLong(offset + PREVIOUS_TIME, state.getPreviousTime());
+      slots.putLong(offset + LAST_UPDATED, state.getLastUpdated());
+      slots.putDouble(offset + X, state.getX());
+      slots.putDouble(offset + Y, state.getY());
+      slots.putInt(offset + WKID, state.getWkid());
+      slots.putDouble(offset + EXTENT_X, state.getExtentX());
+      slots.putDouble(offset + EXTENT_Y, state.getExtentY());
+      slots.put(offset + IDLING, (byte) (state.isIdling() ? 1 : 0));
+      slots.put(offset + CHECKPOINT_DIRTY, (byte) (state.checkpointDirty ? 1 : 0));
+      slots.putInt(offset + IDLE_TIER, state.getIdleTier());
+      slots.putDouble(offset + IDLE_DURATION, state.getIdleDuration());
+      slots.putInt(offset + IDLE_COUNT, state.getIdleCount());
+      slots.putDouble(offset + TOTAL_IDLE, state.getTotalIdleDuration());
+      slots.putDouble(offset + LONGEST_IDLE, state.getLongestIdleDuration());
+    }
+
+    boolean isOccupied(int slot)
+    {
+      return slot <= mask && slots.getLong(slot * slotSize + HASH) != 0;
+    }
+
+    long lastUpdated(int slot)
+    {
+      return slots.getLong(slot * slotSize + LAST_UPDATED);
+    }
+
+    long hashAt(int slot)
+    {
+      return slots.getLong(slot * slotSize + HASH);
+    }
+
+    // rebuilds the key of a slot, only for evictions and iterations
+    TrackIdleKey keyAt(int slot)
+    {
+      int offset = slot * slotSize;
+      char[] trackId = new char[slots.getInt(offset + TRACK_ID_LENGTH)];
+      for (int i = 0; i < trackId.length; i++)
+        trackId[i] = slots.getChar(offset + TRACK_ID + 2 * i);
+      return new TrackIdleKey(prefixAt(slots.getInt(offset + PREFIX)), new String(trackId));
+    }
+
+    TrackIdleState copyAt(int slot)
+    {
+      TrackIdleState state = new TrackIdleState(keyAt(slot), 0, Double.NaN, Double.NaN, 0);
+      load(slot, state);
+      return state;
+    }
+  }
+
+  public TrackIdleOffHeapStateStore(int maxTrackIdLength)
+  {
+    this.maxTrackIdLength = Math.max(1, maxTrackIdLength);
+    // slots are a multiple of 8 bytes, so that they can be copied as longs
+    this.slotSize = (TRACK_ID + 2 * this.maxTrackIdLength + 7) & ~7;
+    for (int i = 0; i < segments.length; i++)
+      segments[i] = new Segment();
+  }
+
+  public int getMaxTrackIdLength()
+  {
+    return maxTrackIdLength;
+  }
+
+  public long getCapacityBytes()
+  {
+    long bytes = 0;
+    for (Segment segment : segments)
+    {
+      synchronized (segment)
+      {
+        bytes += segment.slots.capacity();
+      }
+    }
+    return bytes;
+  }
+
+  @Override
+  public Object lockFor(TrackIdleKey cacheKey)
+  {
+    if (isOverflow(cacheKey))
+      return overflow.lockFor(cacheKey);
+    return segmentOf(hash(prefixIdOf(cacheKey.getPrefix()), cacheKey.getTrackId()));
+  }
+
+  @Override
+  public void configure(long maxEntries, long timeToLive)
+  {
+    this.maxEntries = maxEntries;
+    this.timeToLive = timeToLive;
+    // the few heap tracks share the time to live, the size bound is enforced on the slots
+    overflow.configure(0, timeToLive);
+  }
+
+  @Override
+  public TrackIdleState get(TrackIdleKey cacheKey)
+  {
+    if (isOverflow(cacheKey))
+      return overflow.get(cacheKey);
+    int prefixId = prefixIdOf(cacheKey.getPrefix());
+    long hash = hash(prefixId, cacheKey.getTrackId());
+    Segment segment = segmentOf(hash);
+    int slot = segment.find(hash, prefixId, cacheKey.getTrackId());
+    if (slot < 0)
+      return null;
+    TrackIdleState view = views.get();
+    view.setKey(cacheKey);
+    segment.load(slot, view);
+    return view;
+  }
+
+  @Override
+  public void put(TrackIdleKey cacheKey, TrackIdleState state)
+  {
+    if (isOverflow(cacheKey))
+    {
+      overflow.put(cacheKey, state);
+      return;
+    }
+    int prefixId = prefixIdOf(cacheKey.getPrefix());
+    long hash = hash(prefixId, cacheKey.getTrackId());
+    Segment segment = segmentOf(hash);
+    int slot = segment.find(hash, prefixId, cacheKey.getTrackId());
+    if (slot < 0)
+      slot = segment.insert(hash, prefixId, cacheKey.getTrackId());
+    segment.store(slot, state);
+  }
+
+  @Override
+  public void update(TrackIdleState state)
+  {
+    put(state.getKey(), state);
+  }
+
+  @Override
+  public Iterable<TrackIdleState> values()
+  {
+    List<TrackIdleState> states = new ArrayList<TrackIdleState>(size());
+    for (Segment segment : segments)
+    {
+      synchronized (segment)
+      {
+        for (int slot = 0; slot <= segment.mask; slot++)
+        {
+          if (segment.isOccupied(slot))
+            states.add(segment.copyAt(slot));
+        }
+      }
+    }
+    for (TrackIdleState state : overflow.values())
+      states.add(state);
+    return states;
+  }
+
+  @Override
+  public int size()
+  {
+    int size = overflow.size();
+    for (Segment segment : segments)
+      size += segment.size;
+    return size;
+  }
+
+  @Override
+  public boolean isBounded()
+  {
+    return maxEntries > 0 || timeToLive > 0;
+  }
+
+  @Override
+  public void evict(long now, EvictionListener listener)
+  {
+    overflow.evict(now, listener);
+    if (!isBounded())
+      return;
+    // another thread is evicting, this call skips it
+    if (!evictionLock.tryLock())
+      return;
+    try
+    {
+      if (timeToLive > 0)
+      {
+        for (int i = 0; i < EVICTION_BATCH; i++)
+        {
+          Segment segment = segments[evictionSegment];
+          synchronized (segment)
+          {
+            int slot = evictionSlot;
+            if (segment.isOccupied(slot) && now - segment.lastUpdated(slot) > timeToLive)
+            {
+              evict(segment, slot, true, listener);
+              // the slot now holds the next one of its probe sequence, if any
+              continue;
+            }
+          }
+          advanceEvictionCursor();
+        }
+      }
+
+      // over capacity: drop the least recently updated of a small sample; a call adds at most one track and removes up to
+      // MAX_SIZE_EVICTIONS, so an overshoot drains over the following calls without stalling any of them
+      for (int evictions = 0; maxEntries > 0 && size() > maxEntries && evictions < MAX_SIZE_EVICTIONS; evictions++)
+      {
+        Segment oldestSegment = null;
+        int oldestSlot = -1;
+        long oldestHash = 0;
+        long oldestUpdated = Long.MAX_VALUE;
+        for (int i = 0, sampled = 0; sampled < EVICTION_SAMPLE && i < EVICTION_SAMPLE * 16; i++)
+        {
+          Segment segment = segments[evictionSegment];
+          synchronized (segment)
+          {
+            int slot = evictionSlot;
+            if (segment.isOccupied(slot))
+            {
+              sampled++;
+              if (segment.lastUpdated(slot) < oldestUpdated)
+              {
+                oldestSegment = segment;
+                oldestSlot = slot;
+                oldestHash = segment.hashAt(slot);
+                oldestUpdated = segment.lastUpdated(slot);
+              }
+            }
+          }
+          advanceEvictionCursor();
+        }
+        if (oldestSegment == null)
+          break;
+        synchronized (oldestSegment)
+        {
+          // the slot may have been freed or refilled in the meantime
+          if (oldestSegment.isOccupied(oldestSlot) && oldestSegment.hashAt(oldestSlot) == oldestHash)
+            evict(oldestSegment, oldestSlot, false, listener);
+        }
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  // called while holding the segment lock
+  private void evict(Segment segment, int slot, boolean expired, EvictionListener listener)
+  {
+    TrackIdleState state = segment.copyAt(slot);
+    segment.delete(slot);
+    listener.onEviction(state.getKey(), state, expired);
+  }
+
+  private void advanceEvictionCursor()
+  {
+    evictionSlot++;
+    if (evictionSlot > segments[evictionSegment].mask)
+    {
+      evictionSlot = 0;
+      evictionSegment = (evictionSegment + 1) % SEGMENTS;
+    }
+  }
+
+  private boolean isOverflow(TrackIdleKey cacheKey)
+  {
+    return cacheKey.getTrackId().length() > maxTrackIdLength;
+  }
+
+  private Segment segmentOf(long hash)
+  {
+    return segments[(int) (hash >>> SEGMENT_SHIFT) & (SEGMENTS - 1)];
+  }
+
+  private int prefixIdOf(TrackIdleKey.Prefix prefix)
+  {
+    Integer prefixId = prefixIds.get(prefix);
+    if (prefixId != null)
+      return prefixId;
+    synchronized (prefixes)
+    {
+      prefixId = prefixIds.get(prefix);
+      if (prefixId == null)
+      {
+        prefixId = prefixes.size();
+        prefixes.add(prefix);
+        prefixIds.put(prefix, prefixId);
+      }
+      return prefixId;
+    }
+  }
+
+  private TrackIdleKey.Prefix prefixAt(int prefixId)
+  {
+    synchronized (prefixes)
+    {
+      return prefixes.get(prefixId);
+    }
+  }
+
+  // FNV-1a with the MurmurHash3 finalizer, never 0 which marks a free slot
+  private static long hash(int prefixId, String trackId)
+  {
+    long hash = 0xcbf29ce484222325L ^ prefixId;
+    for (int i = 0; i < trackId.length(); i++)
+    {
+      hash ^= trackId.charAt(i);
+      hash *= 0x100000001b3L;
+    }
+    hash ^= hash >>> 33;
+    hash *= 0xff51afd7ed558ccdL;
+    hash ^= hash >>> 33;
+    hash *= 0xc4ceb9fe1a85ec53L;
+    hash ^= hash >>> 33;
+    return (hash == 0) ? 1 : hash;
+  }
+}
@@ -0,0 +1,71 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Output GeoEvent Definition resolved for an input GeoEvent Definition, or the reason it could not be created.
+ */
+public class TrackIdleOutputDefinition
+{
+  private final GeoEventDefinition inputDefinition;
+  private final GeoEventDefinition outputDefinition;
+  private final TrackIdleCopyPlan  copyPlan;
+  private final String             error;
+
+  public TrackIdleOutputDefinition(GeoEventDefinition inputDefinition, GeoEventDefinition outputDefinition, TrackIdleCopyPlan copyPlan, String error)
+  {
+    this.inputDefinition = inputDefinition;
+    this.outputDefinition = outputDefinition;
+    this.copyPlan = copyPlan;
+    this.error = error;
+  }
+
+  public boolean isValidFor(GeoEventDefinition eventGED)
+  {
+    return inputDefinition == eventGED;
+  }
+
+  public GeoEventDefinition getInputDefinition()
+  {
+    return inputDefinition;
+  }
+
+  public GeoEventDefinition getOutputDefinition()
+  {
+    return outputDefinition;
+  }
+
+  public TrackIdleCopyPlan getCopyPlan()
+  {
+    return copyPlan;
+  }
+
+  public String getError()
+  {
+    return error;
+  }
+}
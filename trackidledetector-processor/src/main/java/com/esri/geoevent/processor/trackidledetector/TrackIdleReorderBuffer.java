@@ -0,0 +1,145 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+/**
+ * Per-track buffer of the event-time mode, holding up to capacity events sorted by event time. It remembers the newest
+ * and the last released event times across flushes.
+ */
+public class TrackIdleReorderBuffer
+{
+  private static final int INITIAL_SLOTS = 4;
+
+  private int              capacity;
+  private GeoEvent[]       events;
+  private long[]           eventTimes;
+  private long[]           arrivalTimes;
+  private int              size;
+  private long             maxEventTime  = Long.MIN_VALUE;
+  private long             releasedTime  = Long.MIN_VALUE;
+
+  public TrackIdleReorderBuffer(int capacity)
+  {
+    setCapacity(capacity);
+  }
+
+  public int getCapacity()
+  {
+    return capacity;
+  }
+
+  public void setCapacity(int capacity)
+  {
+    this.capacity = Math.max(1, capacity);
+  }
+
+  public boolean isLate(long eventTime)
+  {
+    return eventTime < releasedTime;
+  }
+
+  public void add(GeoEvent geoEvent, long eventTime, long arrivalTime)
+  {
+    ensureSlots(size + 1);
+    int index = size;
+    while (index > 0 && eventTimes[index - 1] > eventTime)
+      index--;
+    System.arraycopy(events, index, events, index + 1, size - index);
+    System.arraycopy(eventTimes, index, eventTimes, index + 1, size - index);
+    System.arraycopy(arrivalTimes, index, arrivalTimes, index + 1, size - index);
+    events[index] = geoEvent;
+    eventTimes[index] = eventTime;
+    arrivalTimes[index] = arrivalTime;
+    size++;
+    maxEventTime = Math.max(maxEventTime, eventTime);
+  }
+
+  public boolean isReleasable(long watermark, long arrivalDeadline)
+  {
+    return size > 0 && (size > capacity || eventTimes[0] <= watermark || arrivalTimes[0] <= arrivalDeadline);
+  }
+
+  public GeoEvent poll()
+  {
+    GeoEvent geoEvent = events[0];
+    releasedTime = eventTimes[0];
+    size--;
+    System.arraycopy(events, 1, events, 0, size);
+    System.arraycopy(eventTimes, 1, eventTimes, 0, size);
+    System.arraycopy(arrivalTimes, 1, arrivalTimes, 0, size);
+    events[size] = null;
+    return geoEvent;
+  }
+
+  public int size()
+  {
+    return size;
+  }
+
+  public long getMaxEventTime()
+  {
+    return maxEventTime;
+  }
+
+  public void clear()
+  {
+    size = 0;
+    trim();
+  }
+
+  // frees the slots of a drained buffer
+  public void trim()
+  {
+    if (size == 0)
+    {
+      events = null;
+      eventTimes = null;
+      arrivalTimes = null;
+    }
+  }
+
+  // one spare slot over the capacity: an event is always added first, the overflow is released right after
+  private void ensureSlots(int slots)
+  {
+    if (events != null && events.length >= slots)
+      return;
+    int length = Math.max(slots, Math.min(capacity + 1, (events != null) ? events.length * 2 : INITIAL_SLOTS));
+    GeoEvent[] newEvents = new GeoEvent[length];
+    long[] newEventTimes = new long[length];
+    long[] newArrivalTimes = new long[length];
+    if (events != null)
+    {
+      System.arraycopy(events, 0, newEvents, 0, size);
+      System.arraycopy(eventTimes, 0, newEventTimes, 0, size);
+      System.arraycopy(arrivalTimes, 0, newArrivalTimes, 0, size);
+    }
+    events = newEvents;
+    eventTimes = newEventTimes;
+    arrivalTimes = newArrivalTimes;
+  }
+}
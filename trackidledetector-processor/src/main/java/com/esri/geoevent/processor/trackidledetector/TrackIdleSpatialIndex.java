@@ -0,0 +1,432 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Point;
+
+/**
+ * Uniform grids over the anchor positions of the idle tracks, one per spatial reference. The cells are spread over
+ * stripes with their own monitor and primitive keyed tables, so tracks in different stripes update in parallel.
+ */
+public class TrackIdleSpatialIndex
+{
+  private static final int                             STRIPES          = 64;
+  private static final int                             INITIAL_CAPACITY = 16;
+
+  private final double                                 cellMeters;
+  private final IntFunction<TrackIdleDistanceStrategy> strategies;
+  // copied on write, a detector sees few spatial references
+  private volatile Grid[]                              grids            = new Grid[0];
+
+  public TrackIdleSpatialIndex(double cellMeters, IntFunction<TrackIdleDistanceStrategy> strategies)
+  {
+    this.cellMeters = cellMeters;
+    this.strategies = strategies;
+  }
+
+  public double getCellMeters()
+  {
+    return cellMeters;
+  }
+
+  // called while holding the track lock
+  public void update(TrackIdleState state)
+  {
+    TrackIdleIndexEntry entry = entryOf(state);
+    if (!state.isIdling() || !state.hasPosition())
+    {
+      if (entry != null)
+        remove(state);
+      return;
+    }
+    if (entry != null && entry.getX() == state.getX() && entry.getY() == state.getY() && entry.getWkid() == state.getWkid() && entry.getIdleSince() == state.getStartTime())
+      return;
+
+    TrackIdleIndexEntry updated = new TrackIdleIndexEntry(state.getKey(), state.getX(), state.getY(), state.getWkid(), state.getStartTime());
+    Grid grid = gridOf(updated.getWkid(), true);
+    updated.index = this;
+    updated.cell = grid.cellOf(updated.getX(), updated.getY());
+    // one stripe at a time, a query in between may miss the track
+    if (entry != null)
+      unlink(entry);
+    Stripe stripe = grid.stripeOf(updated.cell);
+    synchronized (stripe)
+    {
+      stripe.link(updated);
+    }
+    state.indexEntry = updated;
+  }
+
+  public void remove(TrackIdleState state)
+  {
+    TrackIdleIndexEntry entry = entryOf(state);
+    if (entry != null)
+    {
+      unlink(entry);
+      state.indexEntry = null;
+    }
+  }
+
+  public int size()
+  {
+    int size = 0;
+    for (Grid grid : grids)
+    {
+      for (Stripe stripe : grid.stripes)
+      {
+        synchronized (stripe)
+        {
+          size += stripe.size;
+        }
+      }
+    }
+    return size;
+  }
+
+  // in the coordinates of the spatial reference
+  public List<TrackIdleIndexEntry> queryEnvelope(int wkid, double xmin, double ymin, double xmax, double ymax)
+  {
+    List<TrackIdleIndexEntry> found = new ArrayList<TrackIdleIndexEntry>();
+    Grid grid = gridOf(wkid, false);
+    if (grid != null)
+      grid.query(xmin, ymin, xmax, ymax, found);
+    return found;
+  }
+
+  // x and y in the coordinates of the spatial reference, geographic ones wrap around the antimeridian
+  public List<TrackIdleIndexEntry> queryRadius(int wkid, double x, double y, double radiusMeters)
+  {
+    List<TrackIdleIndexEntry> found = new ArrayList<TrackIdleIndexEntry>();
+    Grid grid = gridOf(wkid, false);
+    if (grid == null)
+      return found;
+
+    List<TrackIdleIndexEntry> candidates = new ArrayList<TrackIdleIndexEntry>();
+    if (grid.strategy.isPlanar())
+    {
+      double delta = grid.strategy.toUnits(radiusMeters, y);
+      grid.query(x - delta, y - delta, x + delta, y + delta, candidates);
+      for (TrackIdleIndexEntry entry : candidates)
+      {
+        if (grid.strategy.planarMeters(x, y, entry.getX(), entry.getY()) <= radiusMeters)
+          found.add(entry);
+      }
+      return found;
+    }
+
+    double deltaY = TrackIdleDistance.toDegrees(radiusMeters);
+    double cosine = Math.cos(Math.toRadians(Math.min(Math.abs(y) + deltaY, 89.0)));
+    double deltaX = deltaY / cosine;
+    if (deltaX >= 180.0)
+    {
+      grid.query(-180.0, y - deltaY, 180.0, y + deltaY, candidates);
+    }
+    else
+    {
+      grid.query(x - deltaX, y - deltaY, x + deltaX, y + deltaY, candidates);
+      // the part of the envelope beyond the antimeridian continues on the other side
+      if (x - deltaX < -180.0)
+        grid.query(x - deltaX + 360.0, y - deltaY, 180.0, y + deltaY, candidates);
+      if (x + deltaX > 180.0)
+        grid.query(-180.0, y - deltaY, x + deltaX - 360.0, y + deltaY, candidates);
+    }
+
+    Point center = null;
+    for (TrackIdleIndexEntry entry : candidates)
+    {
+      int comparison = TrackIdleDistance.compareToTolerance(x, y, entry.getX(), entry.getY(), radiusMeters);
+      if (comparison == TrackIdleDistance.AMBIGUOUS)
+      {
+        // outside of the fast approximation, settle it with the geodesic distance
+        if (center == null)
+          center = new Point(x, y);
+        double meters = GeometryEngine.geodesicDistanceOnWGS84(center, new Point(entry.getX(), entry.getY()));
+        comparison = (meters > radiusMeters) ? TrackIdleDistance.BEYOND : TrackIdleDistance.WITHIN;
+      }
+      if (comparison == TrackIdleDistance.WITHIN)
+        found.add(entry);
+    }
+    return found;
+  }
+
+  // entries left behind by a previous index of the detector are not linked here
+  private TrackIdleIndexEntry entryOf(TrackIdleState state)
+  {
+    TrackIdleIndexEntry entry = state.indexEntry;
+    return (entry != null && entry.index == this) ? entry : null;
+  }
+
+  private void unlink(TrackIdleIndexEntry entry)
+  {
+    Stripe stripe = gridOf(entry.getWkid(), false).stripeOf(entry.cell);
+    synchronized (stripe)
+    {
+      stripe.unlink(entry);
+    }
+  }
+
+  private Grid gridOf(int wkid, boolean create)
+  {
+    for (Grid grid : grids)
+    {
+      if (grid.wkid == wkid)
+        return grid;
+    }
+    if (!create)
+      return null;
+    synchronized (this)
+    {
+      Grid[] current = grids;
+      for (Grid grid : current)
+      {
+        if (grid.wkid == wkid)
+          return grid;
+      }
+      Grid grid = new Grid(wkid, strategies.apply(wkid), cellMeters);
+      Grid[] updated = new Grid[current.length + 1];
+      System.arraycopy(current, 0, updated, 0, current.length);
+      updated[current.length] = grid;
+      grids = updated;
+      return grid;
+    }
+  }
+
+  private static final class Grid
+  {
+    final int                       wkid;
+    final TrackIdleDistanceStrategy strategy;
+    // in the units of the spatial reference, degrees unless it is projected
+    final double                    cellSize;
+    final Stripe[]                  stripes = new Stripe[STRIPES];
+
+    Grid(int wkid, TrackIdleDistanceStrategy strategy, double cellMeters)
+    {
+      this.wkid = wkid;
+      this.strategy = strategy;
+      this.cellSize = (strategy.isPlanar()) ? cellMeters / strategy.getMetersPerUnit() : TrackIdleDistance.toDegrees(cellMeters);
+      for (int i = 0; i < stripes.length; i++)
+        stripes[i] = new Stripe();
+    }
+
+    Stripe stripeOf(long cell)
+    {
+      return stripes[(int) (mix(cell) >>> 58)];
+    }
+
+    long cellOf(double x, double y)
+    {
+      return cellKey(cellIndex(x), cellIndex(y));
+    }
+
+    void query(double xmin, double ymin, double xmax, double ymax, List<TrackIdleIndexEntry> found)
+    {
+      long minX = cellIndex(xmin);
+      long minY = cellIndex(ymin);
+      long maxX = cellIndex(xmax);
+      long maxY = cellIndex(ymax);
+      // a racy estimate is good enough to pick the cheaper scan
+      long cells = 0;
+      for (Stripe stripe : stripes)
+        cells += stripe.cells;
+      if ((maxX - minX + 1.0) * (maxY - minY + 1.0) > cells)
+      {
+        for (Stripe stripe : stripes)
+        {
+          synchronized (stripe)
+          {
+            for (TrackIdleIndexEntry head : stripe.heads)
+              collect(head, xmin, ymin, xmax, ymax, found);
+          }
+        }
+      }
+      else
+      {
+        for (long cellX = minX; cellX <= maxX; cellX++)
+        {
+          for (long cellY = minY; cellY <= maxY; cellY++)
+          {
+            long cell = cellKey(cellX, cellY);
+            Stripe stripe = stripeOf(cell);
+            synchronized (stripe)
+            {
+              collect(stripe.get(cell), xmin, ymin, xmax, ymax, found);
+            }
+          }
+        }
+      }
+    }
+
+    private long cellIndex(double coordinate)
+    {
+      return (long) Math.floor(coordinate / cellSize);
+    }
+  }
+
+  // open addressing from cell keys to the first entry of the cell, guarded by its own monitor
+  private static final class Stripe
+  {
+    private long[]                keys  = new long[INITIAL_CAPACITY];
+    private TrackIdleIndexEntry[] heads = new TrackIdleIndexEntry[INITIAL_CAPACITY];
+    private int                   cells;
+    private int                   size;
+
+    TrackIdleIndexEntry get(long cell)
+    {
+      int slot = find(cell);
+      return (slot >= 0) ? heads[slot] : null;
+    }
+
+    void link(TrackIdleIndexEntry entry)
+    {
+      int slot = find(entry.cell);
+      TrackIdleIndexEntry head = null;
+      if (slot >= 0)
+      {
+        head = heads[slot];
+      }
+      else
+      {
+        if (2 * (cells + 1) > keys.length)
+          resize(keys.length * 2);
+        slot = freeSlot(entry.cell);
+        keys[slot] = entry.cell;
+        cells++;
+      }
+      heads[slot] = entry;
+      entry.prev = null;
+      entry.next = head;
+      if (head != null)
+        head.prev = entry;
+      size++;
+    }
+
+    void unlink(TrackIdleIndexEntry entry)
+    {
+      if (entry.prev != null)
+      {
+        entry.prev.next = entry.next;
+      }
+      else
+      {
+        // the entry is the head of its cell
+        int slot = find(entry.cell);
+        if (entry.next != null)
+          heads[slot] = entry.next;
+        else
+          delete(slot);
+      }
+      if (entry.next != null)
+        entry.next.prev = entry.prev;
+      entry.prev = null;
+      entry.next = null;
+      size--;
+    }
+
+    private int find(long cell)
+    {
+      int mask = keys.length - 1;
+      for (int slot = (int) mix(cell) & mask; heads[slot] != null; slot = (slot + 1) & mask)
+      {
+        if (keys[slot] == cell)
+          return slot;
+      }
+      return -1;
+    }
+
+    private int freeSlot(long cell)
+    {
+      int mask = keys.length - 1;
+      int slot = (int) mix(cell) & mask;
+      while (heads[slot] != null)
+        slot = (slot + 1) & mask;
+      return slot;
+    }
+
+    // backward shift deletion keeps the probe sequences intact without tombstones
+    private void delete(int slot)
+    {
+      int mask = keys.length - 1;
+      heads[slot] = null;
+      cells--;
+      for (int next = (slot + 1) & mask; heads[next] != null; next = (next + 1) & mask)
+      {
+        int home = (int) mix(keys[next]) & mask;
+        if (((next - home) & mask) >= ((next - slot) & mask))
+        {
+          keys[slot] = keys[next];
+          heads[slot] = heads[next];
+          heads[next] = null;
+          slot = next;
+        }
+      }
+    }
+
+    private void resize(int capacity)
+    {
+      long[] oldKeys = keys;
+      TrackIdleIndexEntry[] oldHeads = heads;
+      keys = new long[capacity];
+      heads = new TrackIdleIndexEntry[capacity];
+      for (int i = 0; i < oldHeads.length; i++)
+      {
+        if (oldHeads[i] != null)
+        {
+          int slot = freeSlot(oldKeys[i]);
+          keys[slot] = oldKeys[i];
+          heads[slot] = oldHeads[i];
+        }
+      }
+    }
+  }
+
+  private static void collect(TrackIdleIndexEntry entry, double xmin, double ymin, double xmax, double ymax, List<TrackIdleIndexEntry> found)
+  {
+    for (; entry != null; entry = entry.next)
+    {
+      if (entry.getX() >= xmin && entry.getX() <= xmax && entry.getY() >= ymin && entry.getY() <= ymax)
+        found.add(entry);
+    }
+  }
+
+  private static long cellKey(long cellX, long cellY)
+  {
+    return (cellX << 32) ^ (cellY & 0xFFFFFFFFL);
+  }
+
+  // the stripe takes the high bits of the mixed key, the tables of a stripe the low bits
+  private static long mix(long key)
+  {
+    key ^= key >>> 33;
+    key *= 0xff51afd7ed558ccdL;
+    key ^= key >>> 33;
+    return key;
+  }
+}
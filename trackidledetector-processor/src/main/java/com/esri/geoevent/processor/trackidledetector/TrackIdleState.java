@@ -24,66 +24,180 @@
 
 package com.esri.geoevent.processor.trackidledetector;
 
-import com.esri.core.geometry.MapGeometry;
-import java.util.Date;
+import com.esri.core.geometry.Geometry;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
 
 public class TrackIdleState
 {
-  private String      trackId;
-  private Date        startTime;
-  private Date        previousTime;
-  private MapGeometry geometry;
-  private boolean     isIdling;
-  private double      idleDuration;
+  // times are epoch milliseconds, the anchor position is kept as plain coordinates and only turned back into a
+  // MapGeometry when a notification is released. Multipoints, polylines and polygons are anchored at the center of
+  // their envelope, their half extents are kept for envelope comparisons and the shape itself for the notifications.
+  // The parts most tracks never need, the shape, the rollup and the idle timer links, are only allocated when used
+  private TrackIdleKey       key;
+  private long               startTime;
+  private long               previousTime;
+  private long               lastUpdated;
+  // wall clock time the anchor event arrived, the idle timer measures from it
+  private long               anchorArrivalTime;
+  private double             x                   = Double.NaN;
+  private double             y                   = Double.NaN;
+  private int                wkid;
+  // null while the extent is unknown, Extent.POINT for point anchors
+  private Extent             extent;
+  private boolean            isIdling;
+  private int                idleTier;
+  private double             idleDuration;
+  private GeoEventDefinition geoEventDefinition;
+  // idle episodes closed since the last rollup, null until the first one
+  private Rollup             rollup;
 
-  public TrackIdleState(String trackId, Date startTime, Date previousTime, MapGeometry geometry)
+  // idle timer links, allocated and maintained by the TrackIdleTimingWheel
+  TimerLinks                 timer;
+  // queued for the next checkpoint, maintained by the TrackIdleCheckpoint
+  boolean                    checkpointDirty;
+  // events held back in event-time mode, guarded by the track lock
+  TrackIdleReorderBuffer     reorderBuffer;
+  // current entry in the spatial index of idle tracks, guarded by the track lock
+  TrackIdleIndexEntry        indexEntry;
+
+  private static final class Extent
+  {
+    private static final Extent POINT = new Extent();
+
+    private Geometry            shape;
+    private double              extentX;
+    private double              extentY;
+  }
+
+  private static final class Rollup
+  {
+    private int    idleCount;
+    private double totalIdleDuration;
+    private double longestIdleDuration;
+  }
+
+  static final class TimerLinks
+  {
+    long           tick = -1;
+    int            slot;
+    TrackIdleState prev;
+    TrackIdleState next;
+  }
+
+  public TrackIdleState(TrackIdleKey key, long startTime, double x, double y, int wkid)
   {
-    this.trackId = trackId;
+    this.key = key;
     this.startTime = startTime;
     this.previousTime = startTime;
-    this.geometry = geometry;
+    this.x = x;
+    this.y = y;
+    this.wkid = wkid;
     this.idleDuration = 0;
     this.setIdling(false);
   }
 
-  public String getTrackId()
+  public TrackIdleKey getKey()
+  {
+    return key;
+  }
+
+  // rebinds a state view of the TrackIdleOffHeapStateStore to the key it was loaded for
+  void setKey(TrackIdleKey key)
   {
-    return trackId;
+    this.key = key;
   }
 
-  public void setTrackId(String trackId)
+  public String getTrackId()
   {
-    this.trackId = trackId;
+    return key.getTrackId();
   }
 
-  public Date getStartTime()
+  public long getStartTime()
   {
     return startTime;
   }
 
-  public void setStartTime(Date startTime)
+  public void setStartTime(long startTime)
   {
     this.startTime = startTime;
   }
 
-  public Date getPreviousTime()
+  public long getPreviousTime()
   {
     return previousTime;
   }
 
-  public void setPreviousTime(Date previousTime)
+  public void setPreviousTime(long previousTime)
   {
     this.previousTime = previousTime;
   }
 
-  public MapGeometry getGeometry()
+  public boolean hasPosition()
+  {
+    return !Double.isNaN(x) && !Double.isNaN(y);
+  }
+
+  public double getX()
+  {
+    return x;
+  }
+
+  public double getY()
+  {
+    return y;
+  }
+
+  public int getWkid()
+  {
+    return wkid;
+  }
+
+  public void setPosition(double x, double y, int wkid)
+  {
+    this.x = x;
+    this.y = y;
+    this.wkid = wkid;
+  }
+
+  public boolean hasExtent()
+  {
+    return extent != null;
+  }
+
+  public double getExtentX()
+  {
+    return (extent != null) ? extent.extentX : Double.NaN;
+  }
+
+  public double getExtentY()
+  {
+    return (extent != null) ? extent.extentY : Double.NaN;
+  }
+
+  public Geometry getShape()
   {
-    return geometry;
+    return (extent != null) ? extent.shape : null;
   }
 
-  public void setGeometry(MapGeometry geometry)
+  public void setShape(Geometry shape, double extentX, double extentY)
   {
-    this.geometry = geometry;
+    if (shape == null && extentX == 0 && extentY == 0)
+    {
+      extent = Extent.POINT;
+    }
+    else if (Double.isNaN(extentX) || Double.isNaN(extentY))
+    {
+      extent = null;
+    }
+    else
+    {
+      // reused in place, a state view of the TrackIdleOffHeapStateStore loads the extent of every event it handles
+      if (extent == null || extent == Extent.POINT)
+        extent = new Extent();
+      extent.shape = shape;
+      extent.extentX = extentX;
+      extent.extentY = extentY;
+    }
   }
 
   public boolean isIdling()
@@ -96,6 +210,16 @@ public class TrackIdleState
     this.isIdling = isIdling;
   }
 
+  public int getIdleTier()
+  {
+    return idleTier;
+  }
+
+  public void setIdleTier(int idleTier)
+  {
+    this.idleTier = idleTier;
+  }
+
   public double getIdleDuration()
   {
     return idleDuration;
@@ -106,9 +230,77 @@ public class TrackIdleState
     this.idleDuration = idleDuration;
 	}
 
+  // idle episodes closed since the last rollup
+  public int getIdleCount()
+  {
+    return (rollup != null) ? rollup.idleCount : 0;
+  }
+
+  public double getTotalIdleDuration()
+  {
+    return (rollup != null) ? rollup.totalIdleDuration : 0;
+  }
+
+  public double getLongestIdleDuration()
+  {
+    return (rollup != null) ? rollup.longestIdleDuration : 0;
+  }
+
+  public void setRollup(int idleCount, double totalIdleDuration, double longestIdleDuration)
+  {
+    if (rollup == null)
+    {
+      if (idleCount == 0 && totalIdleDuration == 0 && longestIdleDuration == 0)
+        return;
+      rollup = new Rollup();
+    }
+    rollup.idleCount = idleCount;
+    rollup.totalIdleDuration = totalIdleDuration;
+    rollup.longestIdleDuration = longestIdleDuration;
+  }
+
+  public void closeIdleEpisode(double idleDuration)
+  {
+    if (rollup == null)
+      rollup = new Rollup();
+    rollup.idleCount++;
+    rollup.totalIdleDuration += idleDuration;
+    rollup.longestIdleDuration = Math.max(rollup.longestIdleDuration, idleDuration);
+  }
+
+  public GeoEventDefinition getGeoEventDefinition()
+  {
+    return geoEventDefinition;
+  }
+
+  public void setGeoEventDefinition(GeoEventDefinition geoEventDefinition)
+  {
+    this.geoEventDefinition = geoEventDefinition;
+  }
+
+  public long getAnchorArrivalTime()
+  {
+    return anchorArrivalTime;
+  }
+
+  public void setAnchorArrivalTime(long anchorArrivalTime)
+  {
+    this.anchorArrivalTime = anchorArrivalTime;
+  }
+
+  public long getLastUpdated()
+  {
+    return lastUpdated;
+  }
+
+  public void setLastUpdated(long lastUpdated)
+  {
+    this.lastUpdated = lastUpdated;
+  }
+
   @Override
   public String toString()
   {
-    return "TrackIdleState [trackId=" + trackId + ", startTime=" + startTime + ", previousTime=" + previousTime + ", geometry=" + geometry + ", isIdling=" + isIdling + ", idleDuration=" + idleDuration + "]";
+    return "TrackIdleState [key=" + key + ", startTime=" + startTime + ", previousTime=" + previousTime + ", x=" + x + ", y=" + y + ", wkid=" + wkid + ", isIdling=" + isIdling + ", idleTier=" + idleTier + ", idleDuration=" + idleDuration + ", idleCount=" + getIdleCount() + "]";
   }
 }
@@ -0,0 +1,176 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * On-heap track state map, evicted in small batches by a rolling iterator.
+ */
+public class TrackIdleStateCache implements TrackIdleStateStore
+{
+  private static final int                                  EVICTION_BATCH     = 64;
+  private static final int                                  EVICTION_SAMPLE    = 16;
+  private static final int                                  MAX_SIZE_EVICTIONS = 8;
+  private static final int                                  LOCK_STRIPES       = 1024;
+
+  private final Map<TrackIdleKey, TrackIdleState>           states             = new ConcurrentHashMap<TrackIdleKey, TrackIdleState>();
+  private final ReentrantLock                               evictionLock       = new ReentrantLock();
+  private final Object[]                                    trackLocks         = new Object[LOCK_STRIPES];
+  private Iterator<Map.Entry<TrackIdleKey, TrackIdleState>> evictionCursor;
+
+  private volatile long                                     maxEntries;
+  private volatile long                                     timeToLive;
+
+  public TrackIdleStateCache()
+  {
+    for (int i = 0; i < trackLocks.length; i++)
+      trackLocks[i] = new Object();
+  }
+
+  @Override
+  public Object lockFor(TrackIdleKey cacheKey)
+  {
+    int hash = cacheKey.hashCode();
+    return trackLocks[(hash ^ (hash >>> 16)) & (LOCK_STRIPES - 1)];
+  }
+
+  @Override
+  public void configure(long maxEntries, long timeToLive)
+  {
+    this.maxEntries = maxEntries;
+    this.timeToLive = timeToLive;
+  }
+
+  @Override
+  public TrackIdleState get(TrackIdleKey cacheKey)
+  {
+    return states.get(cacheKey);
+  }
+
+  @Override
+  public void put(TrackIdleKey cacheKey, TrackIdleState state)
+  {
+    states.put(cacheKey, state);
+  }
+
+  // the states are kept as they are, there is nothing to write back
+  @Override
+  public void update(TrackIdleState state)
+  {
+    ;
+  }
+
+  @Override
+  public Collection<TrackIdleState> values()
+  {
+    return states.values();
+  }
+
+  @Override
+  public int size()
+  {
+    return states.size();
+  }
+
+  @Override
+  public boolean isBounded()
+  {
+    return maxEntries > 0 || timeToLive > 0;
+  }
+
+  @Override
+  public void evict(long now, EvictionListener listener)
+  {
+    if (!isBounded())
+      return;
+    // another thread is evicting, this call skips it
+    if (!evictionLock.tryLock())
+      return;
+    try
+    {
+      if (timeToLive > 0)
+      {
+        for (int i = 0; i < EVICTION_BATCH; i++)
+        {
+          Map.Entry<TrackIdleKey, TrackIdleState> entry = nextEntry();
+          if (entry == null)
+            break;
+          TrackIdleState state = entry.getValue();
+          if (now - state.getLastUpdated() > timeToLive)
+          {
+            synchronized (lockFor(entry.getKey()))
+            {
+              // re-check under the track lock, an event may just have refreshed the track
+              if (now - state.getLastUpdated() > timeToLive && states.remove(entry.getKey(), state))
+                listener.onEviction(entry.getKey(), state, true);
+            }
+          }
+        }
+      }
+
+      // over capacity: drop the least recently updated of a small sample; a call adds at most one track and removes up to
+      // MAX_SIZE_EVICTIONS, so an overshoot drains over the following calls without stalling any of them
+      for (int evictions = 0; maxEntries > 0 && states.size() > maxEntries && evictions < MAX_SIZE_EVICTIONS; evictions++)
+      {
+        Map.Entry<TrackIdleKey, TrackIdleState> oldest = null;
+        for (int i = 0; i < EVICTION_SAMPLE; i++)
+        {
+          Map.Entry<TrackIdleKey, TrackIdleState> entry = nextEntry();
+          if (entry == null)
+            break;
+          if (oldest == null || entry.getValue().getLastUpdated() < oldest.getValue().getLastUpdated())
+            oldest = entry;
+        }
+        if (oldest == null)
+          break;
+        synchronized (lockFor(oldest.getKey()))
+        {
+          if (states.remove(oldest.getKey(), oldest.getValue()))
+            listener.onEviction(oldest.getKey(), oldest.getValue(), false);
+        }
+      }
+    }
+    finally
+    {
+      evictionLock.unlock();
+    }
+  }
+
+  private Map.Entry<TrackIdleKey, TrackIdleState> nextEntry()
+  {
+    if (evictionCursor == null || !evictionCursor.hasNext())
+    {
+      evictionCursor = states.entrySet().iterator();
+      if (!evictionCursor.hasNext())
+        return null;
+    }
+    return evictionCursor.next();
+  }
+}
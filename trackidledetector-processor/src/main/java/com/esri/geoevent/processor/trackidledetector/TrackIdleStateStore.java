@@ -0,0 +1,58 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+/**
+ * Store of the track idle states. A state is only used while holding {@link #lockFor(TrackIdleKey)}, and a state
+ * changed in place is handed back with {@link #update(TrackIdleState)}: some stores return views of their states.
+ */
+public interface TrackIdleStateStore
+{
+  interface EvictionListener
+  {
+    void onEviction(TrackIdleKey cacheKey, TrackIdleState state, boolean expired);
+  }
+
+  Object lockFor(TrackIdleKey cacheKey);
+
+  void configure(long maxEntries, long timeToLive);
+
+  TrackIdleState get(TrackIdleKey cacheKey);
+
+  void put(TrackIdleKey cacheKey, TrackIdleState state);
+
+  void update(TrackIdleState state);
+
+  // detached copies when the store returns views
+  Iterable<TrackIdleState> values();
+
+  int size();
+
+  boolean isBounded();
+
+  // evicts a small batch, the listener is called while holding the track lock
+  void evict(long now, EvictionListener listener);
+}
@@ -0,0 +1,200 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Hierarchical timing wheel of the idle deadlines, striped by track key. The states are linked into the slots directly.
+ */
+public class TrackIdleTimingWheel
+{
+  private static final int WHEEL_BITS = 6;
+  private static final int WHEEL_SIZE = 1 << WHEEL_BITS;
+  private static final int WHEEL_MASK = WHEEL_SIZE - 1;
+  private static final int LEVELS     = 6;
+  private static final int STRIPES    = 16;
+
+  private final long       tickMillis;
+  private final Stripe[]   stripes    = new Stripe[STRIPES];
+
+  public TrackIdleTimingWheel(long tickMillis, long now)
+  {
+    this.tickMillis = Math.max(1, tickMillis);
+    for (int i = 0; i < STRIPES; i++)
+      stripes[i] = new Stripe(now / this.tickMillis);
+  }
+
+  public void schedule(TrackIdleState state, long deadline)
+  {
+    // round up so a timer never fires before its deadline
+    long tick = (deadline + tickMillis - 1) / tickMillis;
+    Stripe stripe = stripeOf(state);
+    synchronized (stripe)
+    {
+      stripe.schedule(state, tick);
+    }
+  }
+
+  public void cancel(TrackIdleState state)
+  {
+    Stripe stripe = stripeOf(state);
+    synchronized (stripe)
+    {
+      stripe.cancel(state);
+    }
+  }
+
+  // the expired states are no longer scheduled
+  public List<TrackIdleState> advance(long now)
+  {
+    List<TrackIdleState> expired = new ArrayList<TrackIdleState>();
+    long targetTick = now / tickMillis;
+    for (Stripe stripe : stripes)
+    {
+      synchronized (stripe)
+      {
+        stripe.advance(targetTick, expired);
+      }
+    }
+    return expired;
+  }
+
+  private Stripe stripeOf(TrackIdleState state)
+  {
+    int hash = state.getKey().hashCode();
+    return stripes[(hash ^ (hash >>> 16)) & (STRIPES - 1)];
+  }
+
+  // guarded by its own monitor
+  private static final class Stripe
+  {
+    private final TrackIdleState[] slots = new TrackIdleState[LEVELS * WHEEL_SIZE];
+    private long                   currentTick;
+
+    Stripe(long currentTick)
+    {
+      this.currentTick = currentTick;
+    }
+
+    void schedule(TrackIdleState state, long tick)
+    {
+      if (state.timer == null)
+        state.timer = new TrackIdleState.TimerLinks();
+      else if (state.timer.tick >= 0)
+        unlink(state);
+      state.timer.tick = Math.max(tick, currentTick + 1);
+      link(state);
+    }
+
+    void cancel(TrackIdleState state)
+    {
+      if (state.timer != null && state.timer.tick >= 0)
+      {
+        unlink(state);
+        state.timer.tick = -1;
+      }
+    }
+
+    void advance(long targetTick, List<TrackIdleState> expired)
+    {
+      while (currentTick < targetTick)
+      {
+        currentTick++;
+
+        // find the highest level that wrapped on this tick and cascade its timers down, top level first
+        int level = 0;
+        while (level < LEVELS - 1 && (currentTick & ((1L << (WHEEL_BITS * (level + 1))) - 1)) == 0)
+          level++;
+        for (; level > 0; level--)
+          cascade(level);
+
+        int index = (int) (currentTick & WHEEL_MASK);
+        TrackIdleState state = slots[index];
+        slots[index] = null;
+        while (state != null)
+        {
+          TrackIdleState next = state.timer.next;
+          state.timer.prev = null;
+          state.timer.next = null;
+          state.timer.tick = -1;
+          expired.add(state);
+          state = next;
+        }
+      }
+    }
+
+    private void cascade(int level)
+    {
+      int index = level * WHEEL_SIZE + (int) ((currentTick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+      TrackIdleState state = slots[index];
+      slots[index] = null;
+      while (state != null)
+      {
+        TrackIdleState next = state.timer.next;
+        state.timer.prev = null;
+        state.timer.next = null;
+        link(state);
+        state = next;
+      }
+    }
+
+    private void link(TrackIdleState state)
+    {
+      TrackIdleState.TimerLinks links = state.timer;
+      long tick = links.tick;
+      int level = 0;
+      while (level < LEVELS - 1 && ((tick ^ currentTick) >>> (WHEEL_BITS * (level + 1))) != 0)
+        level++;
+      int index = level * WHEEL_SIZE + (int) ((tick >>> (WHEEL_BITS * level)) & WHEEL_MASK);
+      TrackIdleState head = slots[index];
+      links.slot = index;
+      links.prev = null;
+      links.next = head;
+      if (head != null)
+        head.timer.prev = state;
+      slots[index] = state;
+    }
+
+    private void unlink(TrackIdleState state)
+    {
+      TrackIdleState.TimerLinks links = state.timer;
+      if (links.prev != null)
+      {
+        links.prev.timer.next = links.next;
+      }
+      else
+      {
+        // the state is the head of its slot
+        slots[links.slot] = links.next;
+      }
+      if (links.next != null)
+        links.next.timer.prev = links.prev;
+      links.prev = null;
+      links.next = null;
+    }
+  }
+}
@@ -0,0 +1,136 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+public class TrackIdleBatchTest
+{
+  private static final int  TRACKS     = 100;
+  private static final int  ROUNDS     = 12;
+  private static final long EVENT_TIME = 1500000000000L;
+
+  @Test
+  public void batchMatchesSequentialProcessing() throws Exception
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 120L);
+    properties.put("idleTierLimits", "300,600");
+    assertBatchMatchesSequential(properties, false);
+  }
+
+  @Test
+  public void batchMatchesSequentialProcessingInEventTime() throws Exception
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 120L);
+    properties.put("eventTimeLateness", 150L);
+    properties.put("reorderBufferSize", 16);
+    assertBatchMatchesSequential(properties, true);
+  }
+
+  private void assertBatchMatchesSequential(Map<String, Object> properties, boolean shuffled) throws Exception
+  {
+    TrackIdleTestServer sequentialServer = new TrackIdleTestServer();
+    TrackIdleTestServer batchServer = new TrackIdleTestServer();
+    TrackIdleDetector sequential = sequentialServer.createDetector("sequential", properties);
+    TrackIdleDetector batched = batchServer.createDetector("batch", properties);
+    try
+    {
+      List<String> expected = new ArrayList<String>();
+      for (GeoEvent geoEvent : createEvents(sequentialServer, shuffled))
+      {
+        GeoEvent idleGeoEvent = sequential.process(geoEvent);
+        for (GeoEvent sent : sequentialServer.takeSent())
+          expected.add(describe(sent));
+        if (idleGeoEvent != null)
+          expected.add(describe(idleGeoEvent));
+      }
+
+      List<String> actual = new ArrayList<String>();
+      List<GeoEvent> events = createEvents(batchServer, shuffled);
+      // batches large enough to spread the tracks over the fork-join pool, and a small one
+      for (int from = 0; from < events.size(); from += 450)
+      {
+        List<GeoEvent> idleGeoEvents = batched.processBatch(events.subList(from, Math.min(events.size(), from + 450)));
+        assertTrue(batchServer.takeSent().isEmpty());
+        for (GeoEvent idleGeoEvent : idleGeoEvents)
+          actual.add(describe(idleGeoEvent));
+      }
+
+      assertTrue(expected.size() > TRACKS);
+      assertEquals(expected, actual);
+      assertEquals(sequential.getMetrics().getEventsLate(), batched.getMetrics().getEventsLate());
+    }
+    finally
+    {
+      sequential.shutdown();
+      batched.shutdown();
+    }
+  }
+
+  /**
+   * Tracks that park, drive off and park again; in event time the reports of a track arrive somewhat out of order.
+   */
+  private static List<GeoEvent> createEvents(TrackIdleTestServer server, boolean shuffled)
+  {
+    Random random = new Random(7);
+    List<long[]> reports = new ArrayList<long[]>();
+    for (int round = 0; round < ROUNDS; round++)
+    {
+      for (int track = 0; track < TRACKS; track++)
+      {
+        long time = EVENT_TIME + round * 60000L;
+        if (shuffled && random.nextInt(3) == 0)
+          time -= 60000L * (1 + random.nextInt(3));
+        // each track drives off for a few rounds at a different time
+        int leg = (round + track) % ROUNDS;
+        long moved = (leg > 7 && leg < 10) ? round : 0;
+        reports.add(new long[] { track, time, moved });
+      }
+    }
+    List<GeoEvent> events = new ArrayList<GeoEvent>();
+    for (long[] report : reports)
+      events.add(server.createEvent("track-" + report[0], report[1], -117.0 + report[2] * 0.01, 34.0));
+    return events;
+  }
+
+  private static String describe(GeoEvent idleGeoEvent)
+  {
+    return idleGeoEvent.getField("trackId") + " idle=" + idleGeoEvent.getField("idle") + " duration=" + idleGeoEvent.getField("idleDuration") + " tier=" + idleGeoEvent.getField("idleTier");
+  }
+}
@@ -0,0 +1,172 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+public class TrackIdleCheckpointTest
+{
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @Test
+  public void nullOwnerIsRestoredAsNull() throws Exception
+  {
+    File file = new File(folder.getRoot(), "states.checkpoint");
+    TrackIdleStateCache cache = new TrackIdleStateCache();
+    TrackIdleKey key = new TrackIdleKey(new TrackIdleKey.Prefix(null, "Vehicle"), "truck");
+    TrackIdleState state = new TrackIdleState(key, 1500000000000L, -117.19, 34.05, 4326);
+    cache.put(key, state);
+
+    TrackIdleCheckpoint checkpoint = new TrackIdleCheckpoint(file);
+    checkpoint.markDirty(state, false);
+    checkpoint.checkpoint(cache);
+    checkpoint.close();
+
+    Map<TrackIdleKey, TrackIdleState> restored = new TrackIdleCheckpoint(file).restore();
+    assertEquals(1, restored.size());
+    TrackIdleKey restoredKey = restored.keySet().iterator().next();
+    assertNull(restoredKey.getPrefix().getOwner());
+    assertEquals("Vehicle", restoredKey.getPrefix().getName());
+    assertEquals(key, restoredKey);
+  }
+
+  /**
+   * GeoEvent Server may set the processor id after the properties, the checkpoint is then restored after the idle
+   * timer started.
+   */
+  @Test
+  public void statesRestoredAfterTheIdleTimerAreScheduled() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 1L);
+    properties.put("detectIdleWithoutEvents", true);
+    properties.put("idleTimerResolution", 50L);
+    properties.put("checkpointDirectory", folder.getRoot().getPath());
+
+    TrackIdleDetector detector = server.createDetector("restored", properties);
+    detector.process(server.createEvent("truck", 1500000000000L, -117.19, 34.05));
+    detector.shutdown();
+    server.takeSent();
+
+    detector = server.createDetector("other", properties);
+    try
+    {
+      detector.setId("restored");
+      assertEquals(1, detector.getMetrics().getTrackCount());
+      long deadline = System.currentTimeMillis() + 5000;
+      List<GeoEvent> sent = server.takeSent();
+      while (sent.isEmpty() && System.currentTimeMillis() < deadline)
+      {
+        Thread.sleep(20);
+        sent = server.takeSent();
+      }
+      assertTrue("the restored track was not scheduled", !sent.isEmpty());
+      assertEquals("truck", sent.get(0).getField("trackId"));
+      assertEquals(Boolean.TRUE, sent.get(0).getField("idle"));
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  @Test
+  public void offHeapChangesAreAppended() throws Exception
+  {
+    File file = new File(folder.getRoot(), "offheap.checkpoint");
+    TrackIdleOffHeapStateStore store = new TrackIdleOffHeapStateStore(16);
+    TrackIdleKey key = new TrackIdleKey(new TrackIdleKey.Prefix(null, "Vehicle"), "truck");
+    TrackIdleCheckpoint checkpoint = new TrackIdleCheckpoint(file);
+    checkpoint.restore();
+    store.put(key, new TrackIdleState(key, 1500000000000L, -117.19, 34.05, 4326));
+    checkpoint.checkpoint(store);
+
+    // the store hands out views, the change is only known by its key
+    for (int tier = 1; tier <= 2; tier++)
+    {
+      TrackIdleState view = store.get(key);
+      view.setIdling(true);
+      view.setIdleTier(tier);
+      checkpoint.markDirty(view, true);
+      store.update(view);
+      checkpoint.checkpoint(store);
+    }
+    assertFalse(store.get(key).checkpointDirty);
+    checkpoint.close();
+
+    Map<TrackIdleKey, TrackIdleState> restored = new TrackIdleCheckpoint(file).restore();
+    assertTrue(restored.get(key).isIdling());
+    assertEquals(2, restored.get(key).getIdleTier());
+  }
+
+  @Test
+  public void offHeapStatesAreRestored() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 60L);
+    properties.put("stateStore", "OffHeap");
+    properties.put("checkpointDirectory", folder.getRoot().getPath());
+
+    long time = 1500000000000L;
+    TrackIdleDetector detector = server.createDetector("offheap", properties);
+    detector.process(server.createEvent("truck", time, -117.19, 34.05));
+    detector.process(server.createEvent("car", time, -117.20, 34.06));
+    GeoEvent idle = detector.process(server.createEvent("truck", time + 120000, -117.19, 34.05));
+    assertEquals(Boolean.TRUE, idle.getField("idle"));
+    detector.shutdown();
+
+    detector = server.createDetector("offheap", properties);
+    try
+    {
+      assertEquals(2, detector.getMetrics().getTrackCount());
+      // still idle after the restart, moving away ends it
+      assertNull(detector.process(server.createEvent("truck", time + 180000, -117.19, 34.05)));
+      GeoEvent moved = detector.process(server.createEvent("truck", time + 240000, -117.00, 34.20));
+      assertEquals(Boolean.FALSE, moved.getField("idle"));
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+}
@@ -0,0 +1,216 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CyclicBarrier;
+
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+public class TrackIdleConcurrencyTest
+{
+  private static final int  THREADS    = 8;
+  private static final int  TRACKS     = 200;
+  private static final int  REPEATS    = 3;
+  private static final int  ROUNDS     = 5;
+  private static final long EVENT_TIME = 1500000000000L;
+  private static final long IDLE_LIMIT = 10;
+
+  /**
+   * Every thread sends every track the same phases: stationary, stationary past the idle limit, moved, stationary past
+   * the idle limit again. Whichever thread gets there first, each track goes idle twice and leaves idle once.
+   */
+  @Test
+  public void transitionsOfOverlappingTracks() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", IDLE_LIMIT);
+    properties.put("detectIdleWithoutEvents", true);
+    properties.put("idleTimerResolution", 10L);
+    final TrackIdleDetector detector = server.createDetector("transitions", properties);
+    final double[][] phases = { { 0, 0, 0 }, { IDLE_LIMIT + 1, 0, 0 }, { 2 * IDLE_LIMIT, 0.01, 0.01 }, { 4 * IDLE_LIMIT, 0.01, 0.01 } };
+    final ConcurrentLinkedQueue<GeoEvent> notifications = new ConcurrentLinkedQueue<GeoEvent>();
+    try
+    {
+      hammer(server, THREADS, new Sender()
+        {
+          @Override
+          public void send(TrackIdleTestServer server, int thread, CyclicBarrier barrier) throws Exception
+          {
+            for (double[] phase : phases)
+            {
+              for (int track : shuffledTracks(thread, TRACKS))
+              {
+                for (int i = 0; i < REPEATS; i++)
+                {
+                  GeoEvent idleGeoEvent = detector.process(server.createEvent("track-" + track, EVENT_TIME + (long) phase[0] * 1000, -117.0 + phase[1], 34.0 + phase[2]));
+                  if (idleGeoEvent != null)
+                    notifications.add(idleGeoEvent);
+                }
+              }
+              barrier.await();
+            }
+          }
+        });
+
+      Map<String, int[]> transitions = new HashMap<String, int[]>();
+      for (GeoEvent notification : notifications)
+      {
+        int[] counts = transitions.get(notification.getField("trackId"));
+        if (counts == null)
+          transitions.put((String) notification.getField("trackId"), counts = new int[2]);
+        counts[Boolean.TRUE.equals(notification.getField("idle")) ? 0 : 1]++;
+      }
+      assertEquals(TRACKS, transitions.size());
+      for (Map.Entry<String, int[]> entry : transitions.entrySet())
+      {
+        assertEquals(entry.getKey() + " idle", 2, entry.getValue()[0]);
+        assertEquals(entry.getKey() + " not idle", 1, entry.getValue()[1]);
+      }
+      assertTrue(server.takeSent().isEmpty());
+      assertEquals(THREADS * TRACKS * REPEATS * phases.length, detector.getMetrics().getEventsProcessed());
+      assertEquals(TRACKS, detector.getMetrics().getTrackCount());
+      assertEquals(0, detector.getMetrics().getEventsFailed());
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  /**
+   * Threads keep adding tracks past the maximum; the state count settles under it and every eviction is reported once.
+   */
+  @Test
+  public void evictionOfOverlappingTracks() throws Exception
+  {
+    final int maxTracks = 100;
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", IDLE_LIMIT);
+    properties.put("maxTracks", (long) maxTracks);
+    properties.put("emitTrackExpired", true);
+    properties.put("detectIdleWithoutEvents", true);
+    properties.put("idleTimerResolution", 10L);
+    final TrackIdleDetector detector = server.createDetector("eviction", properties);
+    try
+    {
+      hammer(server, THREADS, new Sender()
+        {
+          @Override
+          public void send(TrackIdleTestServer server, int thread, CyclicBarrier barrier) throws Exception
+          {
+            for (int round = 0; round < ROUNDS; round++)
+            {
+              for (int track : shuffledTracks(thread * ROUNDS + round, TRACKS * 5))
+              {
+                detector.process(server.createEvent("track-" + track, EVENT_TIME + round * 1000, -117.0, 34.0));
+              }
+            }
+          }
+        });
+      // the threads skip the eviction while another one is evicting, the overshoot drains over the next events
+      long excess = detector.getMetrics().getTrackCount() - maxTracks;
+      for (long i = 0; i <= excess / 7 + 1; i++)
+        detector.process(server.createEvent("track-0", EVENT_TIME + ROUNDS * 1000 + i, -117.0, 34.0));
+      assertTrue("tracks " + detector.getMetrics().getTrackCount(), detector.getMetrics().getTrackCount() <= maxTracks);
+
+      int expired = 0;
+      for (GeoEvent geoEvent : server.takeSent())
+      {
+        if (geoEvent.getGeoEventDefinition().getName().equals(TrackIdleDetectorDefinition.DEFAULT_TRACK_EXPIRED_GED_NAME))
+          expired++;
+      }
+      assertEquals(detector.getMetrics().getTracksEvicted(), expired);
+      assertTrue(expired >= TRACKS * 5 - maxTracks);
+      assertEquals(0, detector.getMetrics().getEventsFailed());
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  private interface Sender
+  {
+    void send(TrackIdleTestServer server, int thread, CyclicBarrier barrier) throws Exception;
+  }
+
+  private static void hammer(final TrackIdleTestServer server, int threads, final Sender sender) throws Exception
+  {
+    final CyclicBarrier barrier = new CyclicBarrier(threads);
+    final List<Throwable> failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    List<Thread> workers = new ArrayList<Thread>();
+    for (int i = 0; i < threads; i++)
+    {
+      final int thread = i;
+      Thread worker = new Thread(new Runnable()
+        {
+          @Override
+          public void run()
+          {
+            try
+            {
+              barrier.await();
+              sender.send(server, thread, barrier);
+            }
+            catch (Throwable error)
+            {
+              failures.add(error);
+              barrier.reset();
+            }
+          }
+        }, "TrackIdleConcurrencyTest-" + i);
+      workers.add(worker);
+      worker.start();
+    }
+    for (Thread worker : workers)
+      worker.join(60000);
+    if (!failures.isEmpty())
+      throw new AssertionError(failures.get(0));
+  }
+
+  private static List<Integer> shuffledTracks(int seed, int tracks)
+  {
+    List<Integer> order = new ArrayList<Integer>();
+    for (int i = 0; i < tracks; i++)
+      order.add(i);
+    Collections.shuffle(order, new Random(seed));
+    return order;
+  }
+}
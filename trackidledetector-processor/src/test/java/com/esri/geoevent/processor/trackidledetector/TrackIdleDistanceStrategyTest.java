@@ -0,0 +1,114 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+
+public class TrackIdleDistanceStrategyTest
+{
+  private static final String STATE_PLANE_WKT = "PROJCS[\"NAD_1983_StatePlane_California_V_FIPS_0405_Feet\",GEOGCS[\"GCS_North_American_1983\",DATUM[\"D_North_American_1983\",SPHEROID[\"GRS_1980\",6378137.0,298.257222101]],PRIMEM[\"Greenwich\",0.0],UNIT[\"Degree\",0.0174532925199433]],PROJECTION[\"Lambert_Conformal_Conic\"],PARAMETER[\"False_Easting\",6561666.666666666],PARAMETER[\"False_Northing\",1640416.666666667],PARAMETER[\"Central_Meridian\",-118.0],PARAMETER[\"Standard_Parallel_1\",34.03333333333333],PARAMETER[\"Standard_Parallel_2\",35.46666666666667],PARAMETER[\"Latitude_Of_Origin\",33.5],UNIT[\"Foot_US\",0.3048006096012192]]";
+  private static final String UTM_WKT         = "PROJCS[\"WGS_1984_UTM_Zone_11N\",GEOGCS[\"GCS_WGS_1984\",DATUM[\"D_WGS_1984\",SPHEROID[\"WGS_1984\",6378137.0,298.257223563]],PRIMEM[\"Greenwich\",0.0],UNIT[\"Degree\",0.0174532925199433]],PROJECTION[\"Transverse_Mercator\"],PARAMETER[\"False_Easting\",500000.0],PARAMETER[\"False_Northing\",0.0],PARAMETER[\"Central_Meridian\",-117.0],PARAMETER[\"Scale_Factor\",0.9996],PARAMETER[\"Latitude_Of_Origin\",0.0],UNIT[\"Meter\",1.0]]";
+
+  @Test
+  public void utmIsPlanarInMeters()
+  {
+    for (SpatialReference sr : new SpatialReference[] { SpatialReference.create(32611), SpatialReference.create(UTM_WKT) })
+    {
+      TrackIdleDistanceStrategy strategy = TrackIdleDistanceStrategy.of(sr);
+      assertTrue(strategy.isPlanar());
+      assertFalse(strategy.isMercator());
+      assertEquals(1.0, strategy.getMetersPerUnit(), 1e-9);
+      assertEquals(500.0, strategy.planarMeters(500000.0, 3800000.0, 500300.0, 3800400.0), 1e-6);
+    }
+  }
+
+  @Test
+  public void statePlaneIsPlanarInFeet()
+  {
+    TrackIdleDistanceStrategy byWkid = TrackIdleDistanceStrategy.of(SpatialReference.create(2229));
+    assertTrue(byWkid.isPlanar());
+    assertEquals(0.3048, byWkid.getMetersPerUnit(), 1e-5);
+
+    TrackIdleDistanceStrategy byWkt = TrackIdleDistanceStrategy.of(SpatialReference.create(STATE_PLANE_WKT));
+    assertTrue(byWkt.isPlanar());
+    assertEquals(1200.0 / 3937.0, byWkt.getMetersPerUnit(), 1e-12);
+    assertEquals(3048.006096, byWkt.planarMeters(6561666.0, 1640416.0, 6571666.0, 1640416.0), 1e-6);
+  }
+
+  @Test
+  public void geographicIsGeodesic()
+  {
+    assertFalse(TrackIdleDistanceStrategy.of(SpatialReference.create(4326)).isPlanar());
+    assertFalse(TrackIdleDistanceStrategy.of(SpatialReference.create(4269)).isPlanar());
+    assertFalse(TrackIdleDistanceStrategy.of(null).isPlanar());
+  }
+
+  @Test
+  public void webMercatorIsScaledByTheLatitude()
+  {
+    for (int wkid : new int[] { 3857, 102100 })
+    {
+      TrackIdleDistanceStrategy strategy = TrackIdleDistanceStrategy.of(SpatialReference.create(wkid));
+      assertTrue(strategy.isPlanar());
+      assertTrue(strategy.isMercator());
+      for (double latitude : new double[] { 0.0, 34.05, 60.0, 80.0 })
+      {
+        // 100 meters east along the parallel, as the geodesic measures it
+        double y = 6378137.0 * Math.log(Math.tan(Math.PI / 4 + Math.toRadians(latitude) / 2));
+        double degrees = 100.0 / (111319.49 * Math.cos(Math.toRadians(latitude)));
+        double geodesic = GeometryEngine.geodesicDistanceOnWGS84(new Point(-117.0, latitude), new Point(-117.0 + degrees, latitude));
+        double x = 6378137.0 * Math.toRadians(degrees);
+        assertEquals("latitude " + latitude, geodesic, strategy.planarMeters(0.0, y, x, y), geodesic * 0.01);
+        // the envelope of a radius query covers the distance on the poleward side
+        assertTrue(strategy.toUnits(geodesic, y) >= x);
+      }
+    }
+  }
+
+  @Test
+  public void otherLinearUnitsArePlanar()
+  {
+    // projected coordinate systems in links, yards and chains
+    assertEquals(0.201168, TrackIdleDistanceStrategy.of(SpatialReference.create(2066)).getMetersPerUnit(), 1e-5);
+    assertEquals(0.9144, TrackIdleDistanceStrategy.of(SpatialReference.create(5472)).getMetersPerUnit(), 1e-4);
+    assertEquals(20.1168, TrackIdleDistanceStrategy.of(SpatialReference.create(3167)).getMetersPerUnit(), 1e-3);
+  }
+
+  @Test
+  public void unknownUnitIsGeodesic()
+  {
+    // the tolerance of a planetary coordinate system is no millimeter in any linear unit
+    assertFalse(TrackIdleDistanceStrategy.of(SpatialReference.create(104919)).isPlanar());
+    assertFalse(TrackIdleDistanceStrategy.of(SpatialReference.create(104906)).isPlanar());
+  }
+}
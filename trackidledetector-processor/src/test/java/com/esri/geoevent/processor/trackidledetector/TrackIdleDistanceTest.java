@@ -0,0 +1,98 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.GeometryEngine;
+import com.esri.core.geometry.Point;
+
+public class TrackIdleDistanceTest
+{
+  private static final double[] TOLERANCES = { 1.0, 36.576, 500.0, 20000.0, 150000.0 };
+  // distances as a fraction of the tolerance, around the band the approximation leaves to the geodesic
+  private static final double[] FACTORS    = { 0.5, 0.98, 0.985, 0.99, 0.995, 0.999, 1.0, 1.001, 1.005, 1.01, 1.015, 1.02, 2.0 };
+  private static final double[] LATITUDES  = { -90.0, -89.99, -85.0, -80.01, -80.0, -79.99, -60.0, -45.0, -20.0, -0.001, 0.0, 15.0, 37.5, 60.0, 75.0, 79.99, 80.0, 80.01, 89.0, 89.99, 90.0 };
+  private static final double[] LONGITUDES = { -180.0, -179.9999, -117.19, 0.0, 45.0, 179.9999, 180.0 };
+
+  @Test
+  public void tieredVerdictMatchesGeodesic()
+  {
+    int conclusive = 0;
+    for (double latitude : LATITUDES)
+    {
+      for (double longitude : LONGITUDES)
+      {
+        for (double tolerance : TOLERANCES)
+        {
+          for (double factor : FACTORS)
+          {
+            for (int bearing = 0; bearing < 360; bearing += 15)
+            {
+              double[] position = move(longitude, latitude, tolerance * factor, bearing);
+              int comparison = TrackIdleDistance.compareToTolerance(longitude, latitude, position[0], position[1], tolerance);
+              if (comparison == TrackIdleDistance.AMBIGUOUS)
+                continue;
+              conclusive++;
+              double meters = GeometryEngine.geodesicDistanceOnWGS84(new Point(longitude, latitude), new Point(position[0], position[1]));
+              int exact = (meters > tolerance) ? TrackIdleDistance.BEYOND : TrackIdleDistance.WITHIN;
+              assertEquals("from " + longitude + "," + latitude + " to " + position[0] + "," + position[1] + ": " + meters + " m, tolerance " + tolerance + " m", exact, comparison);
+            }
+          }
+        }
+      }
+    }
+    // a good part of the sweep, which is weighted towards the band and the poles, is settled without the geodesic
+    assertTrue("conclusive " + conclusive, conclusive > LATITUDES.length * LONGITUDES.length * TOLERANCES.length * FACTORS.length * 24 / 5);
+  }
+
+  @Test
+  public void antimeridianIsCrossedTheShortWay()
+  {
+    assertEquals(TrackIdleDistance.WITHIN, TrackIdleDistance.compareToTolerance(179.9999, 10.0, -179.9999, 10.0, 30.0));
+    assertEquals(TrackIdleDistance.BEYOND, TrackIdleDistance.compareToTolerance(179.9999, 10.0, -179.9999, 10.0, 15.0));
+    assertEquals(TrackIdleDistance.WITHIN, TrackIdleDistance.compareToTolerance(-180.0, 0.0, 180.0, 0.0, 1.0));
+  }
+
+  // destination on the sphere of mean radius, close enough to land around the WGS84 tolerance
+  private static double[] move(double longitude, double latitude, double meters, double bearing)
+  {
+    double angle = meters / 6371008.8;
+    double phi = Math.toRadians(latitude);
+    double theta = Math.toRadians(bearing);
+    double phi2 = Math.asin(Math.sin(phi) * Math.cos(angle) + Math.cos(phi) * Math.sin(angle) * Math.cos(theta));
+    double lambda = Math.atan2(Math.sin(theta) * Math.sin(angle) * Math.cos(phi), Math.cos(angle) - Math.sin(phi) * Math.sin(phi2));
+    double x = longitude + Math.toDegrees(lambda);
+    if (x > 180.0)
+      x -= 360.0;
+    else if (x < -180.0)
+      x += 360.0;
+    return new double[] { x, Math.toDegrees(phi2) };
+  }
+}
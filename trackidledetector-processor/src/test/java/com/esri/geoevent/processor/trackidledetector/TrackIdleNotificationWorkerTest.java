@@ -0,0 +1,134 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.esri.geoevent.processor.trackidledetector.TrackIdleKey.Prefix;
+
+public class TrackIdleNotificationWorkerTest
+{
+  private static final int PRODUCERS = 4;
+
+  @Test
+  public void stopAccountsForEveryOffer() throws Exception
+  {
+    for (TrackIdleNotificationOverflow overflow : TrackIdleNotificationOverflow.values())
+    {
+      final TrackIdleMetrics metrics = new TrackIdleMetrics(new TrackIdleStateCache());
+      final AtomicInteger dispatched = new AtomicInteger();
+      final TrackIdleNotificationWorker worker = new TrackIdleNotificationWorker("test", 8, overflow, new TrackIdleNotificationWorker.NotificationListener()
+        {
+          @Override
+          public void onNotification(TrackIdleNotification notification)
+          {
+            dispatched.incrementAndGet();
+            Thread.yield();
+          }
+        }, metrics);
+      worker.start();
+
+      final AtomicInteger accepted = new AtomicInteger();
+      final AtomicInteger offered = new AtomicInteger();
+      final CountDownLatch started = new CountDownLatch(PRODUCERS);
+      List<Thread> producers = new ArrayList<Thread>();
+      for (int p = 0; p < PRODUCERS; p++)
+      {
+        final TrackIdleNotification notification = createNotification("truck-" + p);
+        Thread producer = new Thread(new Runnable()
+          {
+            @Override
+            public void run()
+            {
+              started.countDown();
+              // keeps offering across the stop, the late offers are rejected
+              for (int i = 0; i < 20000; i++)
+              {
+                offered.incrementAndGet();
+                if (worker.offer(notification))
+                  accepted.incrementAndGet();
+              }
+            }
+          });
+        producer.start();
+        producers.add(producer);
+      }
+      started.await();
+      Thread.sleep(5);
+      worker.stop();
+      int dispatchedAtStop = dispatched.get();
+      for (Thread producer : producers)
+        producer.join();
+
+      assertEquals(overflow.name(), accepted.get(), dispatchedAtStop);
+      assertEquals(overflow.name(), accepted.get(), dispatched.get());
+      assertEquals(overflow.name(), offered.get(), accepted.get() + metrics.getNotificationsDropped());
+      assertFalse(overflow.name(), worker.offer(createNotification("late")));
+      assertEquals(overflow.name(), offered.get() + 1, accepted.get() + metrics.getNotificationsDropped());
+    }
+  }
+
+  @Test
+  public void stopWaitsForASlowListener() throws Exception
+  {
+    final AtomicInteger dispatched = new AtomicInteger();
+    TrackIdleNotificationWorker worker = new TrackIdleNotificationWorker("test", 16, TrackIdleNotificationOverflow.Block, new TrackIdleNotificationWorker.NotificationListener()
+      {
+        @Override
+        public void onNotification(TrackIdleNotification notification)
+        {
+          try
+          {
+            Thread.sleep(10);
+          }
+          catch (InterruptedException error)
+          {
+            Thread.currentThread().interrupt();
+          }
+          dispatched.incrementAndGet();
+        }
+      }, new TrackIdleMetrics(new TrackIdleStateCache()));
+    worker.start();
+    for (int i = 0; i < 16; i++)
+      assertTrue(worker.offer(createNotification("truck")));
+    worker.stop();
+    assertEquals(16, dispatched.get());
+  }
+
+  private static TrackIdleNotification createNotification(String trackId)
+  {
+    TrackIdleState state = new TrackIdleState(new TrackIdleKey(new Prefix(null, "Vehicle"), trackId), 0, 0, 0, 4326);
+    return new TrackIdleNotification(state, false, true, 0, 1, null, false);
+  }
+}
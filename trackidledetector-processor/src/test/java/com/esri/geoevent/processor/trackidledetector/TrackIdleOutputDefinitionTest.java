@@ -0,0 +1,181 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+public class TrackIdleOutputDefinitionTest
+{
+  @Test
+  public void unresolvedOutputDefinitionIsCounted() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    // an input field named like a track idle field prevents the output GeoEvent Definition from being created
+    List<FieldDefinition> fields = new ArrayList<FieldDefinition>();
+    fields.add(new DefaultFieldDefinition("vehicleId", FieldType.String, "TRACK_ID"));
+    fields.add(new DefaultFieldDefinition("reportTime", FieldType.Date, "TIME_START"));
+    fields.add(new DefaultFieldDefinition("idle", FieldType.Boolean));
+    fields.add(new DefaultFieldDefinition("shape", FieldType.Geometry, "GEOMETRY"));
+    GeoEventDefinition input = server.createDefinition("Clashing", "test", fields);
+
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("notificationMode", "Continuous");
+    properties.put("idleLimit", 1L);
+    properties.put("keepFields", true);
+    TrackIdleDetector detector = server.createDetector("unresolved", properties);
+    try
+    {
+      long time = 1500000000000L;
+      for (int i = 0; i < 5; i++)
+        assertNull(detector.process(server.createEvent(input, "truck", time + i * 10000, -117.19, 34.05)));
+      assertEquals(4, detector.getMetrics().getNotificationsUnresolved());
+      assertEquals(0, detector.getMetrics().getEventsFailed());
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  @Test
+  public void projectionsGetTheirOwnOutputDefinition() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    GeoEventDefinition full = idleNotificationDefinition(server, "full", "");
+    GeoEventDefinition speed = idleNotificationDefinition(server, "speed", "speed");
+    GeoEventDefinition time = idleNotificationDefinition(server, "time", "TIME_START");
+
+    assertEquals("Vehicle_TrackIdle", full.getName());
+    assertNotNull(full.getFieldDefinition("speed"));
+    assertNotNull(full.getFieldDefinition("reportTime"));
+    // the same suffix, yet no projection reuses the definition registered for another field set
+    assertNotNull(speed.getFieldDefinition("speed"));
+    assertNull(speed.getFieldDefinition("reportTime"));
+    assertNull(time.getFieldDefinition("speed"));
+    assertNotNull(time.getFieldDefinition("reportTime"));
+    assertNotEquals(speed.getName(), time.getName());
+    assertNotEquals(full.getName(), speed.getName());
+    // the code does not depend on the order or case of the projected fields
+    assertEquals(speed.getName(), idleNotificationDefinition(server, "speed2", " SPEED ,speed").getName());
+  }
+
+  @Test
+  public void foreignDefinitionUnderTheProjectionNameIsNotUsed() throws Exception
+  {
+    String name = idleNotificationDefinition(new TrackIdleTestServer(), "speed", "speed").getName();
+
+    // another definition registered under the name of the projection
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    GeoEventDefinition foreign = server.createDefinition(name, new TrackIdleDetectorDefinition().getUri().toString(), server.getTrackDefinition().getFieldDefinitions());
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 60L);
+    properties.put("keepFields", true);
+    properties.put("projectedFields", "speed");
+    TrackIdleDetector detector = server.createDetector("foreign", properties);
+    try
+    {
+      long time = 1500000000000L;
+      detector.process(server.createEvent("truck", time, -117.19, 34.05));
+      GeoEvent idle = detector.process(server.createEvent("truck", time + 120000, -117.19, 34.05));
+      assertTrue(idle == null || idle.getGeoEventDefinition() != foreign);
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  @Test
+  public void outputDefinitionIsResolvedAgainOnlyOnceRemoved() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("notificationMode", "Continuous");
+    properties.put("idleLimit", 1L);
+    properties.put("keepFields", true);
+    TrackIdleDetector detector = server.createDetector("cached", properties);
+    try
+    {
+      long time = 1500000000000L;
+      detector.process(server.createEvent("truck", time, -117.19, 34.05));
+      GeoEvent idle = detector.process(server.createEvent("truck", time + 10000, -117.19, 34.05));
+      int searches = server.getSearchCount();
+      for (int i = 2; i < 10; i++)
+        assertEquals(idle.getGeoEventDefinition(), detector.process(server.createEvent("truck", time + i * 10000, -117.19, 34.05)).getGeoEventDefinition());
+      assertEquals(searches, server.getSearchCount());
+
+      // an administrator deleted the output definition, the next notification registers it again
+      server.removeDefinition(idle.getGeoEventDefinition());
+      GeoEvent recreated = detector.process(server.createEvent("truck", time + 100000, -117.19, 34.05));
+      assertNotEquals(idle.getGeoEventDefinition().getGuid(), recreated.getGeoEventDefinition().getGuid());
+      assertEquals(idle.getGeoEventDefinition().getName(), recreated.getGeoEventDefinition().getName());
+      assertTrue(server.getSearchCount() > searches);
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+
+  private static GeoEventDefinition idleNotificationDefinition(TrackIdleTestServer server, String id, String projectedFields) throws Exception
+  {
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 60L);
+    properties.put("keepFields", true);
+    properties.put("outGedSuffixName", "TrackIdle");
+    properties.put("projectedFields", projectedFields);
+    TrackIdleDetector detector = server.createDetector(id, properties);
+    try
+    {
+      long time = 1500000000000L;
+      detector.process(server.createEvent("truck", time, -117.19, 34.05));
+      GeoEvent idle = detector.process(server.createEvent("truck", time + 120000, -117.19, 34.05));
+      assertEquals(Boolean.TRUE, idle.getField("idle"));
+      return idle.getGeoEventDefinition();
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+}
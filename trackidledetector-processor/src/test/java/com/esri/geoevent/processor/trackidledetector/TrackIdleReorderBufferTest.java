@@ -0,0 +1,116 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+public class TrackIdleReorderBufferTest
+{
+  private static final long EVENT_TIME = 1500000000000L;
+
+  @Test
+  public void releasesInEventTimeOrder() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    TrackIdleReorderBuffer buffer = new TrackIdleReorderBuffer(16);
+    long[] times = { 5, 3, 9, 1, 7, 3, 8, 2, 6, 4 };
+    GeoEvent[] events = new GeoEvent[times.length];
+    for (int i = 0; i < times.length; i++)
+    {
+      events[i] = server.createEvent("truck", EVENT_TIME + times[i], 0, 0);
+      buffer.add(events[i], EVENT_TIME + times[i], i);
+    }
+    assertEquals(times.length, buffer.size());
+
+    long previous = Long.MIN_VALUE;
+    while (buffer.isReleasable(Long.MAX_VALUE, Long.MIN_VALUE))
+    {
+      long time = buffer.poll().getStartTime().getTime();
+      assertTrue(time >= previous);
+      previous = time;
+    }
+    assertEquals(0, buffer.size());
+    // equal times keep their arrival order
+    buffer.add(events[1], EVENT_TIME + 3, 0);
+    buffer.add(events[5], EVENT_TIME + 3, 1);
+    assertSame(events[1], buffer.poll());
+    assertSame(events[5], buffer.poll());
+  }
+
+  @Test
+  public void drainedBufferRemembersTheReleasedTime()
+  {
+    TrackIdleReorderBuffer buffer = new TrackIdleReorderBuffer(2);
+    buffer.add(null, EVENT_TIME + 10, 0);
+    buffer.add(null, EVENT_TIME + 20, 0);
+    buffer.add(null, EVENT_TIME + 30, 0);
+    // over capacity, the oldest is released first
+    assertTrue(buffer.isReleasable(Long.MIN_VALUE, Long.MIN_VALUE));
+    buffer.poll();
+    assertFalse(buffer.isReleasable(Long.MIN_VALUE, Long.MIN_VALUE));
+    buffer.poll();
+    buffer.poll();
+    buffer.trim();
+    assertTrue(buffer.isLate(EVENT_TIME + 25));
+    assertFalse(buffer.isLate(EVENT_TIME + 30));
+    buffer.add(null, EVENT_TIME + 40, 0);
+    assertEquals(1, buffer.size());
+  }
+
+  @Test
+  public void eventsOlderThanAppliedStayLateAfterFlush() throws Exception
+  {
+    TrackIdleTestServer server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("idleLimit", 600L);
+    properties.put("eventTimeLateness", 60L);
+    TrackIdleDetector detector = server.createDetector("flush", properties);
+    try
+    {
+      detector.process(server.createEvent("truck", EVENT_TIME, -117.19, 34.05));
+      detector.process(server.createEvent("truck", EVENT_TIME + 120000, -117.19, 34.05));
+      detector.process(server.createEvent("truck", EVENT_TIME + 240000, -117.19, 34.05));
+      // reconfiguring flushes the held back events
+      detector.afterPropertiesSet();
+      detector.process(server.createEvent("truck", EVENT_TIME + 180000, -117.19, 34.05));
+      assertEquals(1, detector.getMetrics().getEventsLate());
+    }
+    finally
+    {
+      detector.shutdown();
+    }
+  }
+}
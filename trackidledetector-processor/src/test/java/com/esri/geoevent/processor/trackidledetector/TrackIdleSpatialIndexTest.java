@@ -0,0 +1,142 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.esri.core.geometry.SpatialReference;
+
+public class TrackIdleSpatialIndexTest
+{
+  private static final int                 UTM_11N = 32611;
+  private static final TrackIdleKey.Prefix PREFIX  = new TrackIdleKey.Prefix("test", "Vehicle");
+
+  @Test
+  public void radiusQueryWrapsAroundTheAntimeridian()
+  {
+    TrackIdleSpatialIndex index = newIndex();
+    index.update(idle("east", 179.9995, 10.0, 4326));
+    index.update(idle("west", -179.9995, 10.0, 4326));
+    index.update(idle("far", 170.0, 10.0, 4326));
+
+    assertEquals(ids("east", "west"), ids(index.queryRadius(4326, -179.9999, 10.0, 200.0)));
+    assertEquals(ids("east", "west"), ids(index.queryRadius(4326, 179.9999, 10.0, 200.0)));
+    assertEquals(ids("far"), ids(index.queryRadius(4326, 170.0, 10.0, 200.0)));
+  }
+
+  @Test
+  public void projectedTracksAreQueriedInTheirUnits()
+  {
+    TrackIdleSpatialIndex index = newIndex();
+    index.update(idle("near", 500000.0, 3800000.0, UTM_11N));
+    index.update(idle("beyond", 500000.0, 3800300.0, UTM_11N));
+    // the same numbers in another spatial reference are another place
+    index.update(idle("other", 500000.0, 3800000.0, 4326));
+
+    assertEquals(ids("near"), ids(index.queryRadius(UTM_11N, 500100.0, 3800000.0, 150.0)));
+    assertEquals(ids("near", "beyond"), ids(index.queryRadius(UTM_11N, 500000.0, 3800150.0, 200.0)));
+    assertEquals(ids("near", "beyond"), ids(index.queryEnvelope(UTM_11N, 499000.0, 3799000.0, 501000.0, 3801000.0)));
+    assertTrue(index.queryRadius(3857, 500000.0, 3800000.0, 150.0).isEmpty());
+  }
+
+  @Test
+  public void concurrentUpdatesKeepEveryTrack() throws Exception
+  {
+    final TrackIdleSpatialIndex index = newIndex();
+    final int threads = 4;
+    final int tracks = 2000;
+    Thread[] workers = new Thread[threads];
+    for (int t = 0; t < threads; t++)
+    {
+      final int thread = t;
+      workers[t] = new Thread()
+        {
+          @Override
+          public void run()
+          {
+            List<TrackIdleState> states = new ArrayList<TrackIdleState>();
+            for (int i = 0; i < tracks; i++)
+              states.add(idle("track-" + thread + "-" + i, -117.0 + i * 0.001, 34.0 + thread * 0.001, 4326));
+            // move every track through a few cells, then leave half of them idle
+            for (int round = 0; round < 5; round++)
+            {
+              for (TrackIdleState state : states)
+              {
+                state.setPosition(state.getX() + 0.01, state.getY(), 4326);
+                index.update(state);
+              }
+            }
+            for (int i = 0; i < tracks; i += 2)
+            {
+              states.get(i).setIdling(false);
+              index.update(states.get(i));
+            }
+          }
+        };
+      workers[t].start();
+    }
+    for (Thread worker : workers)
+      worker.join();
+
+    assertEquals(threads * tracks / 2, index.size());
+    assertEquals(threads * tracks / 2, index.queryEnvelope(4326, -180.0, -90.0, 180.0, 90.0).size());
+  }
+
+  private static TrackIdleSpatialIndex newIndex()
+  {
+    return new TrackIdleSpatialIndex(1000, wkid -> (wkid == UTM_11N) ? TrackIdleDistanceStrategy.of(SpatialReference.create(UTM_11N)) : TrackIdleDistanceStrategy.GEODESIC);
+  }
+
+  private static TrackIdleState idle(String trackId, double x, double y, int wkid)
+  {
+    TrackIdleState state = new TrackIdleState(new TrackIdleKey(PREFIX, trackId), 0, x, y, wkid);
+    state.setIdling(true);
+    return state;
+  }
+
+  private static Set<String> ids(String... trackIds)
+  {
+    Set<String> ids = new HashSet<String>();
+    for (String trackId : trackIds)
+      ids.add(trackId);
+    return ids;
+  }
+
+  private static Set<String> ids(List<TrackIdleIndexEntry> entries)
+  {
+    Set<String> ids = new HashSet<String>();
+    for (TrackIdleIndexEntry entry : entries)
+      ids.add(entry.getTrackId());
+    return ids;
+  }
+}
@@ -0,0 +1,78 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class TrackIdleStateStoreTest
+{
+  private static final int TRACKS = 10000;
+
+  @Test
+  public void loweredMaximumDrainsOverLaterCalls()
+  {
+    drain(new TrackIdleStateCache());
+    drain(new TrackIdleOffHeapStateStore(16));
+  }
+
+  private static void drain(TrackIdleStateStore store)
+  {
+    TrackIdleKey.Prefix prefix = new TrackIdleKey.Prefix("test", "Vehicle");
+    for (int i = 0; i < TRACKS; i++)
+    {
+      TrackIdleKey key = new TrackIdleKey(prefix, "track-" + i);
+      TrackIdleState state = new TrackIdleState(key, i, 0, 0, 4326);
+      state.setLastUpdated(i);
+      store.put(key, state);
+    }
+    store.configure(100, 0);
+
+    final AtomicInteger evicted = new AtomicInteger();
+    TrackIdleStateStore.EvictionListener listener = new TrackIdleStateStore.EvictionListener()
+      {
+        @Override
+        public void onEviction(TrackIdleKey cacheKey, TrackIdleState state, boolean expired)
+        {
+          evicted.incrementAndGet();
+        }
+      };
+    // a single call only evicts a small batch, however far the store is over its maximum
+    store.evict(TRACKS, listener);
+    assertTrue(evicted.get() > 0 && evicted.get() <= 8);
+    int calls = 1;
+    while (store.size() > 100)
+    {
+      store.evict(TRACKS, listener);
+      calls++;
+    }
+    assertEquals(TRACKS - 100, evicted.get());
+    assertTrue("calls " + calls, calls <= (TRACKS - 100) / 7 + 1);
+  }
+}
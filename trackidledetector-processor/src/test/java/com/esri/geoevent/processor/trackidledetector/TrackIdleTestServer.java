@@ -0,0 +1,402 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.core.property.Property;
+import com.esri.ges.core.property.PropertyDefinition;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.Messaging;
+
+/**
+ * Minimal in-memory GeoEvent Server for the tests: a GeoEvent Definition Manager, a GeoEvent creator and a producer
+ * that records the sent events. The SDK interfaces are answered by dynamic proxies.
+ */
+public class TrackIdleTestServer
+{
+  public static final SpatialReference          WGS84           = SpatialReference.create(4326);
+
+  private final Map<String, GeoEventDefinition> definitions     = new ConcurrentHashMap<String, GeoEventDefinition>();
+  private final List<GeoEvent>                  sent            = Collections.synchronizedList(new ArrayList<GeoEvent>());
+  private final AtomicInteger                   searches        = new AtomicInteger();
+  private final GeoEventDefinitionManager       gedManager;
+  private final Messaging                       messaging;
+  private final GeoEventDefinition              trackDefinition;
+
+  public TrackIdleTestServer() throws Exception
+  {
+    final GeoEventCreator creator = proxy(GeoEventCreator.class, new Handler()
+      {
+        @Override
+        Object handle(String method, Object[] args)
+        {
+          GeoEventDefinition definition = (args.length == 2) ? definitions.get(args[1] + "/" + args[0]) : definitions.get((String) args[0]);
+          return (definition != null) ? createGeoEvent(definition) : null;
+        }
+      });
+    final GeoEventProducer producer = proxy(GeoEventProducer.class, new Handler()
+      {
+        @Override
+        Object handle(String method, Object[] args)
+        {
+          if (method.equals("send") && args[0] != null)
+            sent.add((GeoEvent) args[0]);
+          return (method.equals("isConnected")) ? Boolean.TRUE : null;
+        }
+      });
+    messaging = proxy(Messaging.class, new Handler()
+      {
+        @Override
+        Object handle(String method, Object[] args)
+        {
+          return (method.equals("createGeoEventCreator")) ? creator : producer;
+        }
+      });
+    gedManager = proxy(GeoEventDefinitionManager.class, new Handler()
+      {
+        @Override
+        Object handle(String method, Object[] args)
+        {
+          switch (method)
+          {
+            case "searchGeoEventDefinition":
+              searches.incrementAndGet();
+              return definitions.get(args[1] + "/" + args[0]);
+            case "getGeoEventDefinition":
+              return definitions.get((String) args[0]);
+            case "addGeoEventDefinition":
+              GeoEventDefinition definition = (GeoEventDefinition) args[0];
+              createDefinition(definition.getName(), definition.getOwner(), definition.getFieldDefinitions());
+              return null;
+            default:
+              throw new UnsupportedOperationException(method);
+          }
+        }
+      });
+
+    List<FieldDefinition> fields = new ArrayList<FieldDefinition>();
+    fields.add(new DefaultFieldDefinition("vehicleId", FieldType.String, "TRACK_ID"));
+    fields.add(new DefaultFieldDefinition("reportTime", FieldType.Date, "TIME_START"));
+    fields.add(new DefaultFieldDefinition("speed", FieldType.Double));
+    fields.add(new DefaultFieldDefinition("shape", FieldType.Geometry, "GEOMETRY"));
+    trackDefinition = createDefinition("Vehicle", "test", fields);
+  }
+
+  public GeoEventDefinitionManager getGeoEventDefinitionManager()
+  {
+    return gedManager;
+  }
+
+  public Messaging getMessaging()
+  {
+    return messaging;
+  }
+
+  public GeoEventDefinition getTrackDefinition()
+  {
+    return trackDefinition;
+  }
+
+  /**
+   * Creates a detector the way GeoEvent Server deploys it: the definitions shipped with the processor are registered,
+   * then the properties are set, applied and validated.
+   */
+  public TrackIdleDetector createDetector(String id, Map<String, Object> properties) throws Exception
+  {
+    TrackIdleDetectorDefinition definition = new TrackIdleDetectorDefinition();
+    for (GeoEventDefinition ged : definition.getGeoEventDefinitions().values())
+    {
+      if (gedManager.searchGeoEventDefinition(ged.getName(), definition.getUri().toString()) == null)
+        createDefinition(ged.getName(), definition.getUri().toString(), ged.getFieldDefinitions());
+    }
+    TrackIdleDetectorService service = new TrackIdleDetectorService();
+    service.setMessaging(messaging);
+    service.setGedManager(gedManager);
+    TrackIdleDetector detector = (TrackIdleDetector) service.create();
+    detector.setId(id);
+    for (PropertyDefinition propertyDefinition : definition.getPropertyDefinitions().values())
+    {
+      String name = propertyDefinition.getPropertyName();
+      detector.setProperty(new Property(propertyDefinition, properties.containsKey(name) ? properties.get(name) : propertyDefinition.getDefaultValue()));
+    }
+    detector.afterPropertiesSet();
+    detector.validate();
+    return detector;
+  }
+
+  public GeoEventDefinition createDefinition(String name, String owner, List<FieldDefinition> fields)
+  {
+    GeoEventDefinition definition = proxy(GeoEventDefinition.class, new DefinitionHandler(name, owner, fields));
+    definitions.put(owner + "/" + name, definition);
+    definitions.put(definition.getGuid(), definition);
+    return definition;
+  }
+
+  /**
+   * Removes a definition from the GeoEvent Definition Manager, as an administrator deleting it would.
+   */
+  public void removeDefinition(GeoEventDefinition definition)
+  {
+    definitions.remove(definition.getOwner() + "/" + definition.getName());
+    definitions.remove(definition.getGuid());
+  }
+
+  public int getSearchCount()
+  {
+    return searches.get();
+  }
+
+  public GeoEvent createGeoEvent(GeoEventDefinition definition)
+  {
+    return proxy(GeoEvent.class, new EventHandler(definition));
+  }
+
+  public GeoEvent createEvent(String trackId, long time, double x, double y)
+  {
+    return createEvent(trackDefinition, trackId, time, x, y);
+  }
+
+  /**
+   * Creates a GeoEvent of the given definition with its TRACK_ID, TIME_START and GEOMETRY tagged fields set.
+   */
+  public GeoEvent createEvent(GeoEventDefinition definition, String trackId, long time, double x, double y)
+  {
+    GeoEvent geoEvent = createGeoEvent(definition);
+    EventHandler event = (EventHandler) Proxy.getInvocationHandler(geoEvent);
+    event.fields[event.layout.indexOf("TRACK_ID")] = trackId;
+    event.fields[event.layout.indexOf("TIME_START")] = new Date(time);
+    event.fields[event.layout.indexOf("GEOMETRY")] = new MapGeometry(new Point(x, y), WGS84);
+    return geoEvent;
+  }
+
+  /**
+   * Returns the events sent so far and forgets them.
+   */
+  public List<GeoEvent> takeSent()
+  {
+    synchronized (sent)
+    {
+      List<GeoEvent> taken = new ArrayList<GeoEvent>(sent);
+      sent.clear();
+      return taken;
+    }
+  }
+
+  private static <T> T proxy(Class<T> type, InvocationHandler handler)
+  {
+    return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler));
+  }
+
+  private abstract static class Handler implements InvocationHandler
+  {
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+    {
+      switch (method.getName())
+      {
+        case "equals":
+          return proxy == args[0];
+        case "hashCode":
+          return System.identityHashCode(proxy);
+        case "toString":
+          return toString();
+        default:
+          return handle(method.getName(), (args != null) ? args : new Object[0]);
+      }
+    }
+
+    abstract Object handle(String method, Object[] args) throws Exception;
+  }
+
+  private class DefinitionHandler extends Handler
+  {
+    private final String                guid    = UUID.randomUUID().toString();
+    private String                      name;
+    private String                      owner;
+    private List<FieldDefinition>       fields;
+    private final Map<String, Integer>  indexes = new HashMap<String, Integer>();
+
+    DefinitionHandler(String name, String owner, List<FieldDefinition> fields)
+    {
+      this.name = name;
+      this.owner = owner;
+      setFields(fields);
+    }
+
+    int indexOf(String nameOrTag)
+    {
+      Integer index = indexes.get(nameOrTag);
+      return (index != null) ? index : -1;
+    }
+
+    @Override
+    Object handle(String method, Object[] args)
+    {
+      switch (method)
+      {
+        case "getName":
+          return name;
+        case "setName":
+          name = (String) args[0];
+          return null;
+        case "getOwner":
+          return owner;
+        case "setOwner":
+          owner = (String) args[0];
+          return null;
+        case "getGuid":
+          return guid;
+        case "getFieldDefinitions":
+          return new ArrayList<FieldDefinition>(fields);
+        case "setFieldDefinitions":
+          setFields(cast(args[0]));
+          return null;
+        case "getFieldDefinition":
+          int index = indexOf((String) args[0]);
+          return (index >= 0) ? fields.get(index) : null;
+        case "getIndexOf":
+          return indexOf((String) args[0]);
+        case "augment":
+          List<FieldDefinition> augmented = new ArrayList<FieldDefinition>(fields);
+          augmented.addAll(cast(args[0]));
+          return proxy(GeoEventDefinition.class, new DefinitionHandler(name, owner, augmented));
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+
+    private void setFields(List<FieldDefinition> newFields)
+    {
+      indexes.clear();
+      for (int i = newFields.size() - 1; i >= 0; i--)
+      {
+        if (newFields.get(i).getTags() != null)
+        {
+          for (String tag : newFields.get(i).getTags())
+            indexes.put(tag, i);
+        }
+      }
+      for (int i = 0; i < newFields.size(); i++)
+        indexes.put(newFields.get(i).getName(), i);
+      fields = new ArrayList<FieldDefinition>(newFields);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<FieldDefinition> cast(Object fields)
+    {
+      return (List<FieldDefinition>) fields;
+    }
+
+    @Override
+    public String toString()
+    {
+      return owner + "/" + name;
+    }
+  }
+
+  private static class EventHandler extends Handler
+  {
+    private final GeoEventDefinition    definition;
+    private final DefinitionHandler     layout;
+    private final Object[]              fields;
+    private final Map<Object, Object>   properties = new HashMap<Object, Object>();
+
+    EventHandler(GeoEventDefinition definition)
+    {
+      this.definition = definition;
+      this.layout = (DefinitionHandler) Proxy.getInvocationHandler(definition);
+      this.fields = new Object[layout.fields.size()];
+    }
+
+    @Override
+    Object handle(String method, Object[] args)
+    {
+      switch (method)
+      {
+        case "getGeoEventDefinition":
+          return definition;
+        case "getTrackId":
+          Object trackId = field("TRACK_ID");
+          return (trackId != null) ? trackId.toString() : null;
+        case "getGeometry":
+          return field("GEOMETRY");
+        case "getStartTime":
+          return field("TIME_START");
+        case "getField":
+          return (args[0] instanceof Integer) ? fields[(Integer) args[0]] : field((String) args[0]);
+        case "setField":
+          int index = (args[0] instanceof Integer) ? (Integer) args[0] : layout.indexOf((String) args[0]);
+          if (index < 0)
+            throw new IllegalArgumentException("No field " + args[0] + " in " + layout);
+          fields[index] = args[1];
+          return null;
+        case "getAllFields":
+          return fields.clone();
+        case "getProperty":
+          return properties.get(args[0]);
+        case "setProperty":
+          properties.put(args[0], args[1]);
+          return null;
+        default:
+          throw new UnsupportedOperationException(method);
+      }
+    }
+
+    private Object field(String nameOrTag)
+    {
+      int index = layout.indexOf(nameOrTag);
+      return (index >= 0) ? fields[index] : null;
+    }
+
+    @Override
+    public String toString()
+    {
+      return layout + java.util.Arrays.toString(fields);
+    }
+  }
+}
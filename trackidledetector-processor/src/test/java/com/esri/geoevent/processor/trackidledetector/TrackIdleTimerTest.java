@@ -0,0 +1,102 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.esri.ges.core.geoevent.GeoEvent;
+
+public class TrackIdleTimerTest
+{
+  private static final long   EVENT_TIME = 1500000000000L;
+
+  private TrackIdleTestServer server;
+  private TrackIdleDetector   detector;
+
+  @Before
+  public void setUp() throws Exception
+  {
+    server = new TrackIdleTestServer();
+    Map<String, Object> properties = new HashMap<String, Object>();
+    properties.put("notificationMode", "Continuous");
+    properties.put("idleLimit", 1L);
+    properties.put("accumulateIdleDuration", false);
+    properties.put("detectIdleWithoutEvents", true);
+    properties.put("idleTimerResolution", 50L);
+    detector = server.createDetector("timer", properties);
+  }
+
+  @After
+  public void tearDown()
+  {
+    detector.shutdown();
+  }
+
+  @Test
+  public void timerMeasuresFromArrivalOfReplayedEvent() throws Exception
+  {
+    // the event time is long past, the track only becomes idle once it has been silent for the idle limit
+    long arrival = System.currentTimeMillis();
+    assertNull(detector.process(server.createEvent("truck", EVENT_TIME, -117.19, 34.05)));
+    GeoEvent idle = awaitSent(5000);
+    long silence = System.currentTimeMillis() - arrival;
+
+    assertEquals(Boolean.TRUE, idle.getField("idle"));
+    double idleDuration = (Double) idle.getField("idleDuration");
+    assertTrue("idle duration " + idleDuration, idleDuration >= 1.0 && idleDuration <= silence / 1000.0 + 0.1);
+
+    // the previous time stays in event time, the next stationary event measures from the time the timer stood for
+    GeoEvent next = detector.process(server.createEvent("truck", EVENT_TIME + 5000, -117.19, 34.05));
+    double nextDuration = (Double) next.getField("idleDuration");
+    assertEquals(5.0 - idleDuration, nextDuration, 0.11);
+  }
+
+  private GeoEvent awaitSent(long timeoutMillis) throws InterruptedException
+  {
+    long deadline = System.currentTimeMillis() + timeoutMillis;
+    while (System.currentTimeMillis() < deadline)
+    {
+      List<GeoEvent> sent = server.takeSent();
+      if (!sent.isEmpty())
+      {
+        assertEquals(1, sent.size());
+        return sent.get(0);
+      }
+      Thread.sleep(20);
+    }
+    throw new AssertionError("the idle timer did not fire");
+  }
+}
@@ -0,0 +1,144 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.core.geoevent.GeoEventPropertyName;
+
+/**
+ * In-memory GeoEvent: an array of field values laid out by its {@link InMemoryGeoEventDefinition}.
+ */
+final class InMemoryGeoEvent implements GeoEvent
+{
+  private final InMemoryGeoEventDefinition        definition;
+  private final Object[]                          fields;
+  private final Map<GeoEventPropertyName, Object> properties = new HashMap<GeoEventPropertyName, Object>();
+
+  private InMemoryGeoEvent(InMemoryGeoEventDefinition definition)
+  {
+    this.definition = definition;
+    this.fields = new Object[definition.size()];
+  }
+
+  static GeoEvent create(GeoEventDefinition definition)
+  {
+    return new InMemoryGeoEvent(InMemoryGeoEventDefinition.of(definition));
+  }
+
+  @Override
+  public GeoEventDefinition getGeoEventDefinition()
+  {
+    return definition;
+  }
+
+  @Override
+  public String getTrackId()
+  {
+    Object trackId = valueAt(definition.getTrackIdIndex());
+    return (trackId != null) ? trackId.toString() : null;
+  }
+
+  @Override
+  public MapGeometry getGeometry()
+  {
+    return (MapGeometry) valueAt(definition.getGeometryIndex());
+  }
+
+  @Override
+  public Date getStartTime()
+  {
+    return (Date) valueAt(definition.getStartTimeIndex());
+  }
+
+  @Override
+  public Object getField(String nameOrTag)
+  {
+    return valueAt(definition.indexOf(nameOrTag));
+  }
+
+  @Override
+  public Object getField(int index)
+  {
+    return fields[index];
+  }
+
+  @Override
+  public void setField(String nameOrTag, Object value)
+  {
+    int index = definition.indexOf(nameOrTag);
+    if (index < 0)
+      throw new IllegalArgumentException("No field " + nameOrTag + " in " + definition);
+    fields[index] = value;
+  }
+
+  @Override
+  public void setField(int index, Object value)
+  {
+    fields[index] = value;
+  }
+
+  @Override
+  public Object[] getAllFields()
+  {
+    return fields.clone();
+  }
+
+  @Override
+  public void setAllFields(Object[] values)
+  {
+    System.arraycopy(values, 0, fields, 0, Math.min(values.length, fields.length));
+  }
+
+  @Override
+  public Object getProperty(GeoEventPropertyName name)
+  {
+    return properties.get(name);
+  }
+
+  @Override
+  public void setProperty(GeoEventPropertyName name, Object value)
+  {
+    properties.put(name, value);
+  }
+
+  @Override
+  public String toString()
+  {
+    return definition.getName() + Arrays.toString(fields);
+  }
+
+  private Object valueAt(int index)
+  {
+    return (index >= 0) ? fields[index] : null;
+  }
+}
@@ -0,0 +1,152 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import com.esri.ges.core.geoevent.DefaultGeoEventDefinition;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * In-memory GeoEvent Definition: a flat list of fields with their indexes resolved by name and by tag.
+ */
+final class InMemoryGeoEventDefinition extends DefaultGeoEventDefinition
+{
+  private final String          guid = UUID.randomUUID().toString();
+  // set by setFieldDefinitions, which the super constructor may call before the initializers ran
+  private List<FieldDefinition> fields;
+  private Map<String, Integer>  indexes;
+  private int                   trackIdIndex;
+  private int                   startTimeIndex;
+  private int                   geometryIndex;
+
+  private InMemoryGeoEventDefinition(String name, String owner, List<FieldDefinition> fields)
+  {
+    setName(name);
+    setOwner(owner);
+    setFieldDefinitions(fields);
+  }
+
+  static InMemoryGeoEventDefinition create(String name, String owner, List<FieldDefinition> fields)
+  {
+    return new InMemoryGeoEventDefinition(name, owner, fields);
+  }
+
+  static InMemoryGeoEventDefinition of(GeoEventDefinition definition)
+  {
+    return (InMemoryGeoEventDefinition) definition;
+  }
+
+  // by name, else the first field with the tag
+  int indexOf(String nameOrTag)
+  {
+    Integer index = (indexes != null) ? indexes.get(nameOrTag) : null;
+    return (index != null) ? index : -1;
+  }
+
+  int size()
+  {
+    return (fields != null) ? fields.size() : 0;
+  }
+
+  int getTrackIdIndex()
+  {
+    return trackIdIndex;
+  }
+
+  int getStartTimeIndex()
+  {
+    return startTimeIndex;
+  }
+
+  int getGeometryIndex()
+  {
+    return geometryIndex;
+  }
+
+  @Override
+  public String getGuid()
+  {
+    return guid;
+  }
+
+  @Override
+  public void setFieldDefinitions(List<FieldDefinition> newFields)
+  {
+    super.setFieldDefinitions(newFields);
+    Map<String, Integer> newIndexes = new HashMap<String, Integer>();
+    for (int i = 0; i < newFields.size(); i++)
+    {
+      List<String> tags = newFields.get(i).getTags();
+      if (tags != null)
+      {
+        for (String tag : tags)
+          newIndexes.putIfAbsent(tag, i);
+      }
+    }
+    // names take precedence over tags
+    for (int i = 0; i < newFields.size(); i++)
+      newIndexes.put(newFields.get(i).getName(), i);
+    fields = new ArrayList<FieldDefinition>(newFields);
+    indexes = newIndexes;
+    trackIdIndex = indexOf("TRACK_ID");
+    startTimeIndex = indexOf("TIME_START");
+    geometryIndex = indexOf("GEOMETRY");
+  }
+
+  @Override
+  public FieldDefinition getFieldDefinition(String nameOrTag)
+  {
+    // like a field expression, a tag resolves to its field
+    int index = indexOf(nameOrTag);
+    return (index >= 0) ? fields.get(index) : null;
+  }
+
+  @Override
+  public int getIndexOf(String nameOrTag)
+  {
+    return indexOf(nameOrTag);
+  }
+
+  @Override
+  public GeoEventDefinition augment(List<FieldDefinition> moreFields)
+  {
+    List<FieldDefinition> augmented = new ArrayList<FieldDefinition>(fields);
+    augmented.addAll(moreFields);
+    return create(getName(), getOwner(), augmented);
+  }
+
+  @Override
+  public String toString()
+  {
+    return getOwner() + "/" + getName() + " " + indexes.keySet();
+  }
+}
@@ -0,0 +1,237 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetector;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetectorDefinition;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetectorService;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+import com.esri.ges.core.property.Property;
+import com.esri.ges.core.property.PropertyDefinition;
+import com.esri.ges.manager.geoeventdefinition.GeoEventDefinitionManager;
+import com.esri.ges.messaging.EventDestination;
+import com.esri.ges.messaging.GeoEventCreator;
+import com.esri.ges.messaging.GeoEventProducer;
+import com.esri.ges.messaging.Messaging;
+
+/**
+ * In-memory stand-ins for the GeoEvent Server services the detector uses. Sent events are only counted.
+ */
+public class InMemoryGeoEventServer
+{
+  private final Map<String, GeoEventDefinition> definitionsByName = new ConcurrentHashMap<String, GeoEventDefinition>();
+  private final Map<String, GeoEventDefinition> definitionsByGuid = new ConcurrentHashMap<String, GeoEventDefinition>();
+  private final AtomicLong                      sent              = new AtomicLong();
+  private final GeoEventDefinitionManager       gedManager        = StandIn.newProxy(GeoEventDefinitionManager.class, new DefinitionManager());
+  private final GeoEventCreator                 geoEventCreator   = StandIn.newProxy(GeoEventCreator.class, new Creator());
+  private final Messaging                       messaging         = StandIn.newProxy(Messaging.class, new MessagingService());
+
+  public GeoEventDefinitionManager getGeoEventDefinitionManager()
+  {
+    return gedManager;
+  }
+
+  public Messaging getMessaging()
+  {
+    return messaging;
+  }
+
+  public long getSentCount()
+  {
+    return sent.get();
+  }
+
+  // deployed the way GeoEvent Server does it, text property values are converted to the property type
+  public TrackIdleDetector createDetector(String id, Map<String, Object> properties) throws Exception
+  {
+    TrackIdleDetectorDefinition definition = new TrackIdleDetectorDefinition();
+    for (GeoEventDefinition ged : definition.getGeoEventDefinitions().values())
+    {
+      if (gedManager.searchGeoEventDefinition(ged.getName(), definition.getUri().toString()) == null)
+        register(ged, definition.getUri().toString());
+    }
+
+    TrackIdleDetectorService service = new TrackIdleDetectorService();
+    service.setMessaging(messaging);
+    service.setGedManager(gedManager);
+    TrackIdleDetector detector = (TrackIdleDetector) service.create();
+    detector.setId(id);
+    for (PropertyDefinition propertyDefinition : definition.getPropertyDefinitions().values())
+    {
+      String name = propertyDefinition.getPropertyName();
+      Object value = properties.containsKey(name) ? toPropertyValue(propertyDefinition, properties.get(name)) : propertyDefinition.getDefaultValue();
+      detector.setProperty(new Property(propertyDefinition, value));
+    }
+    detector.afterPropertiesSet();
+    detector.validate();
+    return detector;
+  }
+
+  private static Object toPropertyValue(PropertyDefinition propertyDefinition, Object value)
+  {
+    if (!(value instanceof String) || propertyDefinition.getType() == null)
+      return value;
+    String text = ((String) value).trim();
+    switch (propertyDefinition.getType())
+    {
+      case Boolean:
+        return Boolean.valueOf(text);
+      case Integer:
+        return Integer.valueOf(text);
+      case Long:
+        return Long.valueOf(text);
+      case Double:
+        return Double.valueOf(text);
+      default:
+        return value;
+    }
+  }
+
+  public GeoEventDefinition createDefinition(String name, String owner, List<FieldDefinition> fields)
+  {
+    GeoEventDefinition definition = InMemoryGeoEventDefinition.create(name, owner, fields);
+    register(definition);
+    return definition;
+  }
+
+  // registers a copy under another owner
+  public GeoEventDefinition register(GeoEventDefinition definition, String owner)
+  {
+    return createDefinition(definition.getName(), owner, definition.getFieldDefinitions());
+  }
+
+  public GeoEvent createGeoEvent(GeoEventDefinition definition)
+  {
+    return InMemoryGeoEvent.create(definition);
+  }
+
+  private void register(GeoEventDefinition definition)
+  {
+    InMemoryGeoEventDefinition layout = InMemoryGeoEventDefinition.of(definition);
+    definitionsByName.put(layout.getOwner() + "/" + layout.getName(), definition);
+    definitionsByGuid.put(layout.getGuid(), definition);
+  }
+
+  private class DefinitionManager extends StandIn
+  {
+    @Override
+    protected Object handle(Method method, Object[] args) throws Exception
+    {
+      switch (method.getName())
+      {
+        case "searchGeoEventDefinition":
+          return definitionsByName.get(args[1] + "/" + args[0]);
+        case "getGeoEventDefinition":
+          return definitionsByGuid.get(args[0]);
+        case "addGeoEventDefinition":
+          GeoEventDefinition definition = (GeoEventDefinition) args[0];
+          if (!(definition instanceof InMemoryGeoEventDefinition))
+            definition = InMemoryGeoEventDefinition.create(definition.getName(), definition.getOwner(), definition.getFieldDefinitions());
+          register(definition);
+          return null;
+        default:
+          throw unsupported(method);
+      }
+    }
+  }
+
+  private class Creator extends StandIn
+  {
+    @Override
+    protected Object handle(Method method, Object[] args) throws Exception
+    {
+      if (!method.getName().equals("create"))
+        throw unsupported(method);
+      GeoEventDefinition definition = (args.length == 2) ? definitionsByName.get(args[1] + "/" + args[0]) : definitionsByGuid.get(args[0]);
+      if (definition == null)
+        throw new IllegalArgumentException("Unknown GeoEvent Definition " + Arrays.toString(args));
+      return createGeoEvent(definition);
+    }
+  }
+
+  private class MessagingService extends StandIn
+  {
+    @Override
+    protected Object handle(Method method, Object[] args) throws Exception
+    {
+      switch (method.getName())
+      {
+        case "createGeoEventCreator":
+          return geoEventCreator;
+        case "createGeoEventProducer":
+          return StandIn.newProxy(GeoEventProducer.class, new Producer((EventDestination) args[0]));
+        default:
+          throw unsupported(method);
+      }
+    }
+  }
+
+  private class Producer extends StandIn
+  {
+    private final EventDestination destination;
+
+    Producer(EventDestination destination)
+    {
+      this.destination = destination;
+    }
+
+    @Override
+    protected Object handle(Method method, Object[] args) throws Exception
+    {
+      switch (method.getName())
+      {
+        case "send":
+          if (args[0] != null)
+            sent.incrementAndGet();
+          return null;
+        case "getEventDestination":
+          return destination;
+        case "getEventDestinations":
+          return Collections.singletonList(destination);
+        case "isConnected":
+          return true;
+        case "getStatusDetails":
+          return "";
+        case "disconnect":
+        case "setup":
+        case "init":
+          return null;
+        default:
+          throw unsupported(method);
+      }
+    }
+  }
+}
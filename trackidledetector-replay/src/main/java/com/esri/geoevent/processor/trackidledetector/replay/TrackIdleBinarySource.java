@@ -0,0 +1,110 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Reads the binary recordings written by {@link #write(TrackIdleRecordSource, File)}.
+ */
+public class TrackIdleBinarySource implements TrackIdleRecordSource
+{
+  private static final int      MAGIC       = 0x54495231;
+  private static final int      BUFFER_SIZE = 1 << 16;
+
+  private final DataInputStream in;
+
+  public TrackIdleBinarySource(File file) throws IOException
+  {
+    in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE));
+    if (in.readInt() != MAGIC)
+    {
+      in.close();
+      throw new IOException(file + " is not a track idle recording");
+    }
+  }
+
+  public static boolean isRecording(File file) throws IOException
+  {
+    try (DataInputStream probe = new DataInputStream(new FileInputStream(file)))
+    {
+      return probe.readInt() == MAGIC;
+    }
+    catch (EOFException tooShort)
+    {
+      return false;
+    }
+  }
+
+  public static long write(TrackIdleRecordSource source, File file) throws IOException
+  {
+    long count = 0;
+    TrackIdleRecord record = new TrackIdleRecord();
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), BUFFER_SIZE)))
+    {
+      out.writeInt(MAGIC);
+      while (source.next(record))
+      {
+        out.writeUTF(record.getTrackId());
+        out.writeLong(record.getTime());
+        out.writeDouble(record.getX());
+        out.writeDouble(record.getY());
+        count++;
+      }
+    }
+    return count;
+  }
+
+  @Override
+  public boolean next(TrackIdleRecord record) throws IOException
+  {
+    String trackId;
+    try
+    {
+      trackId = in.readUTF();
+    }
+    catch (EOFException endOfRecording)
+    {
+      return false;
+    }
+    record.set(trackId, in.readLong(), in.readDouble(), in.readDouble());
+    return true;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    in.close();
+  }
+}
@@ -0,0 +1,91 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Instant;
+
+/**
+ * Reads trackId,time,x,y reports from a CSV file, the time in epoch milliseconds or ISO-8601.
+ */
+public class TrackIdleCsvSource implements TrackIdleRecordSource
+{
+  private final File           file;
+  private final BufferedReader reader;
+  private long                 lineNumber;
+
+  public TrackIdleCsvSource(File file) throws IOException
+  {
+    this.file = file;
+    this.reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public boolean next(TrackIdleRecord record) throws IOException
+  {
+    String line;
+    while ((line = reader.readLine()) != null)
+    {
+      lineNumber++;
+      line = line.trim();
+      if (line.isEmpty() || line.startsWith("#"))
+        continue;
+
+      String[] columns = line.split(",", -1);
+      try
+      {
+        if (columns.length < 4)
+          throw new IllegalArgumentException("expected the columns trackId,time,x,y");
+        record.set(columns[0].trim(), parseTime(columns[1].trim()), Double.parseDouble(columns[2].trim()), Double.parseDouble(columns[3].trim()));
+        return true;
+      }
+      catch (RuntimeException error)
+      {
+        if (lineNumber == 1)
+          continue;
+        throw new IOException(file + ":" + lineNumber + ": " + error.getMessage(), error);
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public void close() throws IOException
+  {
+    reader.close();
+  }
+
+  private static long parseTime(String value)
+  {
+    if (!value.isEmpty() && value.chars().allMatch(Character::isDigit))
+      return Long.parseLong(value);
+    return Instant.parse(value).toEpochMilli();
+  }
+}
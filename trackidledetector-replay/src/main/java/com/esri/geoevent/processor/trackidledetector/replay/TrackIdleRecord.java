@@ -0,0 +1,71 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+/**
+ * Position report of a track, sources refill the same instance.
+ */
+public class TrackIdleRecord
+{
+  private String trackId;
+  private long   time;
+  private double x;
+  private double y;
+
+  public void set(String trackId, long time, double x, double y)
+  {
+    this.trackId = trackId;
+    this.time = time;
+    this.x = x;
+    this.y = y;
+  }
+
+  public String getTrackId()
+  {
+    return trackId;
+  }
+
+  public long getTime()
+  {
+    return time;
+  }
+
+  public double getX()
+  {
+    return x;
+  }
+
+  public double getY()
+  {
+    return y;
+  }
+
+  @Override
+  public String toString()
+  {
+    return "TrackIdleRecord [trackId=" + trackId + ", time=" + time + ", x=" + x + ", y=" + y + "]";
+  }
+}
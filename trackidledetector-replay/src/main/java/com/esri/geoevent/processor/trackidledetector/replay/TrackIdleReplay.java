@@ -0,0 +1,347 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.esri.core.geometry.MapGeometry;
+import com.esri.core.geometry.Point;
+import com.esri.core.geometry.SpatialReference;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleDetector;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleLatencyHistogram;
+import com.esri.geoevent.processor.trackidledetector.TrackIdleMetrics;
+import com.esri.ges.core.geoevent.DefaultFieldDefinition;
+import com.esri.ges.core.geoevent.FieldException;
+import com.esri.ges.core.geoevent.FieldDefinition;
+import com.esri.ges.core.geoevent.FieldType;
+import com.esri.ges.core.geoevent.GeoEvent;
+import com.esri.ges.core.geoevent.GeoEventDefinition;
+
+/**
+ * Replays recorded or synthetic tracks through a Track Idle Detector as fast as it takes them and reports the rates.
+ */
+public class TrackIdleReplay
+{
+  private static final String           TRACK_GED_NAME  = "ReplayTrack";
+  private static final String           TRACK_GED_OWNER = "replay";
+  private static final SpatialReference WGS84           = SpatialReference.create(4326);
+
+  private final PrintStream             out;
+  private final InMemoryGeoEventServer  server          = new InMemoryGeoEventServer();
+  private final GeoEventDefinition      trackDefinition;
+  private final int                     trackIdIndex;
+  private final int                     timeIndex;
+  private final int                     geometryIndex;
+
+  // options
+  private File                          input;
+  private File                          output;
+  private int                           tracks          = 100000;
+  private long                          events          = -1;
+  private double                        idleRatio       = 0.3;
+  private double                        jitterMeters    = 5;
+  private long                          intervalSeconds = 60;
+  private double                        speed           = 10;
+  private long                          seed            = 1;
+  private int                           batchSize       = 0;
+  private long                          warmupEvents    = 0;
+  private long                          reportSeconds   = 10;
+  private final Map<String, Object>     properties      = new HashMap<String, Object>();
+
+  public TrackIdleReplay(PrintStream out)
+  {
+    this.out = out;
+    List<FieldDefinition> fields = new ArrayList<FieldDefinition>();
+    try
+    {
+      fields.add(new DefaultFieldDefinition("trackId", FieldType.String, "TRACK_ID"));
+      fields.add(new DefaultFieldDefinition("time", FieldType.Date, "TIME_START"));
+      fields.add(new DefaultFieldDefinition("geometry", FieldType.Geometry, "GEOMETRY"));
+    }
+    catch (Exception error)
+    {
+      throw new IllegalStateException(error);
+    }
+    trackDefinition = server.createDefinition(TRACK_GED_NAME, TRACK_GED_OWNER, fields);
+    trackIdIndex = trackDefinition.getIndexOf("trackId");
+    timeIndex = trackDefinition.getIndexOf("time");
+    geometryIndex = trackDefinition.getIndexOf("geometry");
+  }
+
+  public static void main(String[] args) throws Exception
+  {
+    TrackIdleReplay replay = new TrackIdleReplay(System.out);
+    if (args.length == 0 || !replay.parse(args))
+    {
+      usage(System.err);
+      System.exit(1);
+    }
+    replay.run();
+    System.exit(0);
+  }
+
+  private static void usage(PrintStream err)
+  {
+    err.println("Usage: java -jar replay.jar [options]");
+    err.println("  --generate              replay a synthetic fleet, the default");
+    err.println("  --input <file>          replay a CSV (trackId,time,x,y) or binary recording instead of a synthetic fleet");
+    err.println("  --tracks <n>            synthetic fleet size (100000)");
+    err.println("  --events <n>            synthetic reports, one per track and round (10 rounds)");
+    err.println("  --idle-ratio <0..1>     share of parked synthetic tracks (0.3)");
+    err.println("  --jitter <meters>       GPS noise added to every synthetic position (5)");
+    err.println("  --interval <seconds>    time between two reports of a synthetic track (60)");
+    err.println("  --speed <m/s>           speed of the moving synthetic tracks (10)");
+    err.println("  --seed <n>              seed of the synthetic fleet (1)");
+    err.println("  --write <file>          record the reports into a binary file instead of replaying them");
+    err.println("  --batch <n>             feed the reports through processBatch, n at a time (one at a time)");
+    err.println("  --warmup <n>            reports replayed before the measurement starts (0)");
+    err.println("  --report <seconds>      progress report interval (10)");
+    err.println("  -P<name>=<value>        processor property, for instance -PidleLimit=300 -PnotificationMode=Continuous");
+  }
+
+  public boolean parse(String[] args)
+  {
+    try
+    {
+      for (int i = 0; i < args.length; i++)
+      {
+        String arg = args[i];
+        if (arg.startsWith("-P") && arg.indexOf('=') > 2)
+        {
+          properties.put(arg.substring(2, arg.indexOf('=')), arg.substring(arg.indexOf('=') + 1));
+          continue;
+        }
+        switch (arg)
+        {
+          case "--generate":
+            input = null;
+            break;
+          case "--input":
+            input = new File(args[++i]);
+            break;
+          case "--write":
+            output = new File(args[++i]);
+            break;
+          case "--tracks":
+            tracks = Integer.parseInt(args[++i]);
+            break;
+          case "--events":
+            events = Long.parseLong(args[++i]);
+            break;
+          case "--idle-ratio":
+            idleRatio = Double.parseDouble(args[++i]);
+            break;
+          case "--jitter":
+            jitterMeters = Double.parseDouble(args[++i]);
+            break;
+          case "--interval":
+            intervalSeconds = Long.parseLong(args[++i]);
+            break;
+          case "--speed":
+            speed = Double.parseDouble(args[++i]);
+            break;
+          case "--seed":
+            seed = Long.parseLong(args[++i]);
+            break;
+          case "--batch":
+            batchSize = Integer.parseInt(args[++i]);
+            break;
+          case "--warmup":
+            warmupEvents = Long.parseLong(args[++i]);
+            break;
+          case "--report":
+            reportSeconds = Long.parseLong(args[++i]);
+            break;
+          default:
+            System.err.println("Unknown option " + arg);
+            return false;
+        }
+      }
+    }
+    catch (RuntimeException error)
+    {
+      System.err.println("Invalid options: " + error);
+      return false;
+    }
+    return true;
+  }
+
+  public void run() throws Exception
+  {
+    if (output != null)
+    {
+      try (TrackIdleRecordSource source = openSource())
+      {
+        long written = TrackIdleBinarySource.write(source, output);
+        out.printf("Recorded %,d reports into %s%n", written, output);
+      }
+      return;
+    }
+
+    try (TrackIdleRecordSource source = openSource())
+    {
+      // the heap in use before the detector exists, the source keeps its own state out of the measurement
+      long baselineHeap = usedHeapAfterGc();
+      TrackIdleDetector detector = server.createDetector("replay", properties);
+      try
+      {
+        replay(source, detector, baselineHeap);
+      }
+      finally
+      {
+        detector.shutdown();
+      }
+    }
+  }
+
+  private TrackIdleRecordSource openSource() throws IOException
+  {
+    if (input == null)
+    {
+      long total = (events >= 0) ? events : 10L * tracks;
+      return new TrackIdleSyntheticSource(tracks, total, idleRatio, jitterMeters, intervalSeconds * 1000, speed, System.currentTimeMillis(), seed);
+    }
+    if (TrackIdleBinarySource.isRecording(input))
+      return new TrackIdleBinarySource(input);
+    return new TrackIdleCsvSource(input);
+  }
+
+  private void replay(TrackIdleRecordSource source, TrackIdleDetector detector, long baselineHeap) throws Exception
+  {
+    TrackIdleMetrics metrics = detector.getMetrics();
+    TrackIdleRecord record = new TrackIdleRecord();
+    List<GeoEvent> batch = new ArrayList<GeoEvent>(Math.max(batchSize, 1));
+    long replayed = 0;
+    long returned = 0;
+    long measured = 0;
+    long startNanos = System.nanoTime();
+    long reportNanos = reportSeconds * 1000000000L;
+    long lastReportNanos = startNanos;
+    long lastReportEvents = 0;
+    boolean warm = warmupEvents <= 0;
+
+    while (source.next(record))
+    {
+      GeoEvent geoEvent = toGeoEvent(record);
+      if (batchSize > 0)
+      {
+        batch.add(geoEvent);
+        if (batch.size() >= batchSize)
+          returned += processBatch(detector, batch);
+      }
+      else if (detector.process(geoEvent) != null)
+      {
+        returned++;
+      }
+      replayed++;
+
+      if (!warm && replayed >= warmupEvents)
+      {
+        if (!batch.isEmpty())
+          returned += processBatch(detector, batch);
+        metrics.reset();
+        warm = true;
+        measured = 0;
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        lastReportEvents = 0;
+        out.printf("Warmed up with %,d reports%n", replayed);
+        continue;
+      }
+      if (warm)
+        measured++;
+
+      if (reportNanos > 0 && (replayed & 0x3FF) == 0)
+      {
+        long now = System.nanoTime();
+        if (now - lastReportNanos >= reportNanos)
+        {
+          double rate = (measured - lastReportEvents) / ((now - lastReportNanos) / 1e9);
+          out.printf("%,12d reports  %,12.0f events/s  %,10d tracks  p99 %,10.1f us%n", replayed, rate, metrics.getTrackCount(), metrics.getProcessLatency().get99thPercentileMicros());
+          lastReportNanos = now;
+          lastReportEvents = measured;
+        }
+      }
+    }
+    if (!batch.isEmpty())
+      returned += processBatch(detector, batch);
+    long elapsedNanos = System.nanoTime() - startNanos;
+
+    long trackCount = metrics.getTrackCount();
+    long retainedHeap = usedHeapAfterGc() - baselineHeap;
+    TrackIdleLatencyHistogram latency = metrics.getProcessLatency();
+    out.println();
+    out.printf("Reports replayed          %,d (%,d measured)%n", replayed, measured);
+    out.printf("Elapsed                   %,.1f s%n", elapsedNanos / 1e9);
+    out.printf("Sustained rate            %,.0f events/s%n", (elapsedNanos > 0) ? measured / (elapsedNanos / 1e9) : 0.0);
+    out.printf("Latency p50 / p99 / p99.9 %,.1f / %,.1f / %,.1f us (max %,.1f us)%n", latency.getMedianMicros(), latency.get99thPercentileMicros(), latency.get999thPercentileMicros(), latency.getMaxMicros());
+    out.printf("Tracks                    %,d%n", trackCount);
+    out.printf("Heap per track            %,d bytes (%,d MB retained)%n", (trackCount > 0) ? retainedHeap / trackCount : 0, retainedHeap >> 20);
+    out.printf("Idle notifications        %,d%n", metrics.getIdleNotifications());
+    out.printf("Not idle notifications    %,d%n", metrics.getNotIdleNotifications());
+    out.printf("Returned / sent           %,d / %,d%n", returned, server.getSentCount());
+    out.printf("Dropped / rejected / late %,d / %,d / %,d%n", metrics.getEventsDropped(), metrics.getEventsRejected(), metrics.getEventsLate());
+    out.printf("Failed                    %,d%n", metrics.getEventsFailed());
+  }
+
+  private static long processBatch(TrackIdleDetector detector, List<GeoEvent> batch)
+  {
+    long returned = 0;
+    for (GeoEvent notification : detector.processBatch(batch))
+    {
+      if (notification != null)
+        returned++;
+    }
+    batch.clear();
+    return returned;
+  }
+
+  private GeoEvent toGeoEvent(TrackIdleRecord record) throws FieldException
+  {
+    GeoEvent geoEvent = server.createGeoEvent(trackDefinition);
+    geoEvent.setField(trackIdIndex, record.getTrackId());
+    geoEvent.setField(timeIndex, new Date(record.getTime()));
+    geoEvent.setField(geometryIndex, new MapGeometry(new Point(record.getX(), record.getY()), WGS84));
+    return geoEvent;
+  }
+
+  private static long usedHeapAfterGc()
+  {
+    MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    for (int i = 0; i < 3; i++)
+      memory.gc();
+    return memory.getHeapMemoryUsage().getUsed();
+  }
+}
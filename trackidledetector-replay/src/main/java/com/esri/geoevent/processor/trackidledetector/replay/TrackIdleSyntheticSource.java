@@ -0,0 +1,124 @@
+/*
+  Copyright 1995-2016 Esri
+
+    Licensed under the Apache License, Version 2.0 (the "License");
+    you may not use this file except in compliance with the License.
+    You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+    Unless required by applicable law or agreed to in writing, software
+    distributed under the License is distributed on an "AS IS" BASIS,
+    WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+    See the License for the specific language governing permissions and
+    limitations under the License.
+
+  For additional information, contact:
+  Environmental Systems Research Institute, Inc.
+  Attn: Contracts Dept
+  380 New York Street
+  Redlands, California, USA 92373
+
+  email: contracts@esri.com
+ */
+
+
+package com.esri.geoevent.processor.trackidledetector.replay;
+
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Synthetic fleet of parked and moving tracks, each reporting once per round. The same seed replays the same fleet.
+ */
+public class TrackIdleSyntheticSource implements TrackIdleRecordSource
+{
+  private static final double METERS_PER_DEGREE = 111320.0;
+  // the fleet is spread over the contiguous United States
+  private static final double MIN_X             = -124.0;
+  private static final double MAX_X             = -70.0;
+  private static final double MIN_Y             = 26.0;
+  private static final double MAX_Y             = 48.0;
+  private static final double MAX_TURN          = Math.PI / 8;
+
+  private final int           tracks;
+  private final long          events;
+  private final long          intervalMillis;
+  private final double        stepMeters;
+  private final double        jitterMeters;
+  private final long          startTime;
+  private final double[]      x;
+  private final double[]      y;
+  private final double[]      heading;
+  private final BitSet        idle;
+  private final Random        random;
+  private long                emitted;
+
+  // idleRatio is the share of parked tracks, jitterMeters the standard deviation of the GPS noise
+  public TrackIdleSyntheticSource(int tracks, long events, double idleRatio, double jitterMeters, long intervalMillis, double speedMetersPerSecond, long startTime, long seed)
+  {
+    if (tracks <= 0)
+      throw new IllegalArgumentException("tracks must be greater than 0");
+    this.tracks = tracks;
+    this.events = events;
+    this.intervalMillis = intervalMillis;
+    this.stepMeters = speedMetersPerSecond * intervalMillis / 1000.0;
+    this.jitterMeters = jitterMeters;
+    this.startTime = startTime;
+    this.x = new double[tracks];
+    this.y = new double[tracks];
+    this.heading = new double[tracks];
+    this.idle = new BitSet(tracks);
+    this.random = new Random(seed);
+    for (int track = 0; track < tracks; track++)
+    {
+      x[track] = MIN_X + random.nextDouble() * (MAX_X - MIN_X);
+      y[track] = MIN_Y + random.nextDouble() * (MAX_Y - MIN_Y);
+      heading[track] = random.nextDouble() * 2 * Math.PI;
+      if (random.nextDouble() < idleRatio)
+        idle.set(track);
+    }
+  }
+
+  public int getTracks()
+  {
+    return tracks;
+  }
+
+  public long getEvents()
+  {
+    return events;
+  }
+
+  @Override
+  public boolean next(TrackIdleRecord record)
+  {
+    if (emitted >= events)
+      return false;
+    int track = (int) (emitted % tracks);
+    long round = emitted / tracks;
+    emitted++;
+
+    double metersPerDegreeX = METERS_PER_DEGREE * Math.cos(Math.toRadians(y[track]));
+    if (round > 0 && !idle.get(track))
+    {
+      heading[track] += (random.nextDouble() * 2 - 1) * MAX_TURN;
+      x[track] += stepMeters * Math.sin(heading[track]) / metersPerDegreeX;
+      y[track] += stepMeters * Math.cos(heading[track]) / METERS_PER_DEGREE;
+      // turn back into the area instead of driving off it
+      if (x[track] < MIN_X || x[track] > MAX_X || y[track] < MIN_Y || y[track] > MAX_Y)
+        heading[track] += Math.PI;
+    }
+
+    double reportX = x[track] + random.nextGaussian() * jitterMeters / metersPerDegreeX;
+    double reportY = y[track] + random.nextGaussian() * jitterMeters / METERS_PER_DEGREE;
+    long time = startTime + round * intervalMillis + track * intervalMillis / tracks;
+    record.set("track-" + track, time, reportX, reportY);
+    return true;
+  }
+
+  @Override
+  public void close()
+  {
+  }
+}